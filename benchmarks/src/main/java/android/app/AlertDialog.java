@@ -0,0 +1,43 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.app;
+
+import android.content.Context;
+import android.content.DialogInterface;
+
+public class AlertDialog {
+
+	public void show() {
+	}
+
+	public static class Builder {
+
+		public Builder(Context context) {
+		}
+
+		public Builder setTitle(CharSequence title) {
+			return this;
+		}
+
+		public Builder setItems(CharSequence[] items,
+				DialogInterface.OnClickListener listener) {
+			return this;
+		}
+
+		public AlertDialog create() {
+			return new AlertDialog();
+		}
+	}
+}
@@ -0,0 +1,80 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.content;
+
+import java.io.File;
+
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+
+public class Context {
+
+	public static final String CONNECTIVITY_SERVICE = "connectivity";
+
+	private final Resources resources;
+	private final File cacheDir;
+	private final ContentResolver contentResolver = new ContentResolver();
+
+	public Context(Resources resources, File cacheDir) {
+		this.resources = resources;
+		this.cacheDir = cacheDir;
+	}
+
+	public Context getApplicationContext() {
+		return this;
+	}
+
+	public ContentResolver getContentResolver() {
+		return contentResolver;
+	}
+
+	public Resources getResources() {
+		return resources;
+	}
+
+	public File getCacheDir() {
+		return cacheDir;
+	}
+
+	public File getFilesDir() {
+		return cacheDir;
+	}
+
+	public Intent registerReceiver(BroadcastReceiver receiver,
+			IntentFilter filter) {
+		return null;
+	}
+
+	public void unregisterReceiver(BroadcastReceiver receiver) {
+	}
+
+	/**
+	 * No permission is granted.
+	 */
+	public int checkCallingOrSelfPermission(String permission) {
+		return PackageManager.PERMISSION_DENIED;
+	}
+
+	/**
+	 * No system service: the SDK then assumes a fast network.
+	 */
+	public Object getSystemService(String name) {
+		return null;
+	}
+
+	public void startActivity(Intent intent) {
+		throw new ActivityNotFoundException();
+	}
+}
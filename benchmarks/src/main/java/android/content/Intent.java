@@ -0,0 +1,36 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.content;
+
+import android.net.Uri;
+
+public class Intent {
+
+	public static final String ACTION_VIEW = "android.intent.action.VIEW";
+
+	public Intent(String action) {
+	}
+
+	public Intent(String action, Uri uri) {
+	}
+
+	public Intent putExtra(String name, String value) {
+		return this;
+	}
+
+	public boolean getBooleanExtra(String name, boolean defaultValue) {
+		return defaultValue;
+	}
+}
@@ -0,0 +1,47 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.content.res;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.util.DisplayMetrics;
+
+/**
+ * Resources where every drawable is a bitmap of the same size.
+ */
+public class Resources {
+
+	private final int bitmapWidth, bitmapHeight;
+	private final DisplayMetrics metrics = new DisplayMetrics();
+
+	public Resources(int bitmapWidth, int bitmapHeight, float density) {
+		this.bitmapWidth = bitmapWidth;
+		this.bitmapHeight = bitmapHeight;
+		metrics.density = density;
+	}
+
+	public Drawable getDrawable(int id) {
+		return new BitmapDrawable(new Bitmap(bitmapWidth, bitmapHeight));
+	}
+
+	public String getString(int id) {
+		return "";
+	}
+
+	public DisplayMetrics getDisplayMetrics() {
+		return metrics;
+	}
+}
@@ -0,0 +1,70 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.graphics;
+
+/**
+ * Canvas which only counts draw operations, so the drawing code is not
+ * optimized away, and remembers the last text drawn.
+ */
+public class Canvas {
+
+	private long operations;
+	private String lastText;
+
+	public Canvas() {
+	}
+
+	public Canvas(Bitmap bitmap) {
+	}
+
+	public void drawText(String text, float x, float y, Paint paint) {
+		operations += text.length();
+		lastText = text;
+	}
+
+	public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+		operations++;
+	}
+
+	public int save() {
+		return 0;
+	}
+
+	public void restore() {
+	}
+
+	public void translate(float dx, float dy) {
+	}
+
+	/**
+	 * Nothing is clipped.
+	 */
+	public boolean quickReject(float left, float top, float right,
+			float bottom, EdgeType type) {
+		return false;
+	}
+
+	public enum EdgeType {
+		BW, AA
+	}
+
+	public long getOperations() {
+		return operations;
+	}
+
+	public String getLastText() {
+		return lastText;
+	}
+}
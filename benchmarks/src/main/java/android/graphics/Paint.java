@@ -0,0 +1,57 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.graphics;
+
+public class Paint {
+
+	public static final int ANTI_ALIAS_FLAG = 1;
+
+	public enum Align {
+		LEFT, CENTER, RIGHT
+	}
+
+	private float textSize = 12;
+
+	public Paint() {
+	}
+
+	public Paint(int flags) {
+	}
+
+	public void setColor(int color) {
+	}
+
+	public void setAntiAlias(boolean antiAlias) {
+	}
+
+	public void setTextAlign(Align align) {
+	}
+
+	public void setTextSize(float textSize) {
+		this.textSize = textSize;
+	}
+
+	public FontMetrics getFontMetrics() {
+		FontMetrics metrics = new FontMetrics();
+		metrics.ascent = -0.9f * textSize;
+		metrics.descent = 0.2f * textSize;
+		return metrics;
+	}
+
+	public static class FontMetrics {
+		public float ascent;
+		public float descent;
+	}
+}
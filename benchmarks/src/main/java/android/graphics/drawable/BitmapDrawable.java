@@ -0,0 +1,39 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.graphics.drawable;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+public class BitmapDrawable extends Drawable {
+
+	private final Bitmap bitmap;
+
+	public BitmapDrawable(Bitmap bitmap) {
+		this.bitmap = bitmap;
+	}
+
+	public Bitmap getBitmap() {
+		return bitmap;
+	}
+
+	public void setAntiAlias(boolean antiAlias) {
+	}
+
+	@Override
+	public void draw(Canvas canvas) {
+		canvas.drawBitmap(bitmap, getLeft(), getTop(), null);
+	}
+}
@@ -0,0 +1,27 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.net;
+
+public class ConnectivityManager {
+
+	public static final String CONNECTIVITY_ACTION = "android.net.conn.CONNECTIVITY_CHANGE";
+	public static final String EXTRA_NO_CONNECTIVITY = "noConnectivity";
+	public static final int TYPE_MOBILE = 0;
+	public static final int TYPE_WIFI = 1;
+
+	public NetworkInfo getActiveNetworkInfo() {
+		return null;
+	}
+}
@@ -0,0 +1,47 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.os;
+
+/**
+ * Posts to the main looper, which drops the tasks unless a test keeps them.
+ * 
+ * @see Looper#queueTasks()
+ */
+public class Handler {
+
+	private final Looper looper;
+
+	public Handler() {
+		this(Looper.getMainLooper());
+	}
+
+	public Handler(Looper looper) {
+		this.looper = looper;
+	}
+
+	public final boolean post(Runnable r) {
+		looper.post(this, r, 0);
+		return true;
+	}
+
+	public final boolean postDelayed(Runnable r, long delayMillis) {
+		looper.post(this, r, delayMillis);
+		return true;
+	}
+
+	public final void removeCallbacks(Runnable r) {
+		looper.remove(this, r);
+	}
+}
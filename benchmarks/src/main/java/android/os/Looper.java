@@ -0,0 +1,195 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.os;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The only looper of benchmarks and tests. There is no UI thread: by default,
+ * posted tasks are dropped. A test can keep them with {@link #queueTasks()}
+ * and run them on its own thread. The uptime then stops, and only moves when
+ * the test runs delayed tasks.
+ */
+public class Looper {
+
+	private static final Looper mainLooper = new Looper();
+
+	private static class Task {
+		final Handler handler;
+		final Runnable runnable;
+		final long when;
+
+		Task(Handler handler, Runnable runnable, long when) {
+			this.handler = handler;
+			this.runnable = runnable;
+			this.when = when;
+		}
+	}
+
+	// In the order of their time, then of their posting
+	private final List<Task> tasks = new ArrayList<Task>();
+	private volatile boolean queueing = false;
+	private volatile long uptime;
+
+	public static Looper getMainLooper() {
+		return mainLooper;
+	}
+
+	/**
+	 * Keep the tasks posted from now on, and stop the uptime.
+	 */
+	public synchronized void queueTasks() {
+		tasks.clear();
+		uptime = System.nanoTime() / 1000000;
+		queueing = true;
+	}
+
+	/**
+	 * Drop the queued tasks and the tasks posted from now on, and let the
+	 * uptime go again.
+	 */
+	public synchronized void dropTasks() {
+		queueing = false;
+		tasks.clear();
+	}
+
+	long uptimeMillis() {
+		return queueing ? uptime : System.nanoTime() / 1000000;
+	}
+
+	synchronized void post(Handler handler, Runnable runnable, long delay) {
+		if (!queueing) {
+			return;
+		}
+		long when = uptime + Math.max(0, delay);
+		int index = tasks.size();
+		while ((index > 0) && (tasks.get(index - 1).when > when)) {
+			index--;
+		}
+		tasks.add(index, new Task(handler, runnable, when));
+		notifyAll();
+	}
+
+	synchronized void remove(Handler handler, Runnable runnable) {
+		for (int i = tasks.size() - 1; i >= 0; i--) {
+			Task task = tasks.get(i);
+			if ((task.handler == handler) && (task.runnable == runnable)) {
+				tasks.remove(i);
+			}
+		}
+	}
+
+	/**
+	 * Run the tasks due now, including those they post.
+	 * 
+	 * @return The number of tasks run.
+	 */
+	public int runUntilIdle() {
+		int count = 0;
+		Runnable runnable;
+		while ((runnable = takeTask(uptime)) != null) {
+			runnable.run();
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Move the uptime forward, running the tasks due meanwhile at their time.
+	 */
+	public void advanceClock(long millis) {
+		long end = uptime + millis;
+		Runnable runnable;
+		while ((runnable = takeTask(end)) != null) {
+			runnable.run();
+		}
+		uptime = end;
+	}
+
+	/**
+	 * Run the next task due now, waiting for another thread to post one if
+	 * there is none.
+	 * 
+	 * @return <code>false</code> if no task was due within the timeout.
+	 */
+	public boolean runNextTask(long timeoutMillis) throws InterruptedException {
+		Runnable runnable;
+		synchronized (this) {
+			long deadline = System.currentTimeMillis() + timeoutMillis;
+			while ((runnable = takeTask(uptime)) == null) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					return false;
+				}
+				wait(remaining);
+			}
+		}
+		runnable.run();
+		return true;
+	}
+
+	/**
+	 * Run the next task, even if it is delayed: the uptime moves to its time.
+	 * 
+	 * @return <code>false</code> if there is no task.
+	 */
+	public boolean runNextDelayedTask() {
+		Runnable runnable = takeTask(Long.MAX_VALUE);
+		if (runnable == null) {
+			return false;
+		}
+		runnable.run();
+		return true;
+	}
+
+	/**
+	 * Wait for another thread to post a task, if there is none.
+	 * 
+	 * @return <code>false</code> if no task was posted within the timeout.
+	 */
+	public synchronized boolean awaitTask(long timeoutMillis)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (tasks.isEmpty()) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				return false;
+			}
+			wait(remaining);
+		}
+		return true;
+	}
+
+	/**
+	 * @return The number of tasks waiting, due or delayed.
+	 */
+	public synchronized int getQueuedTaskCount() {
+		return tasks.size();
+	}
+
+	/**
+	 * Remove the first task due at the given time, and move the uptime to its
+	 * time.
+	 */
+	private synchronized Runnable takeTask(long time) {
+		if (tasks.isEmpty() || (tasks.get(0).when > time)) {
+			return null;
+		}
+		Task task = tasks.remove(0);
+		uptime = Math.max(uptime, task.when);
+		return task.runnable;
+	}
+}
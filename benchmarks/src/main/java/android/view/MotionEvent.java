@@ -0,0 +1,52 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.view;
+
+/**
+ * A touch event, created by the benchmarks.
+ */
+public final class MotionEvent {
+
+	public static final int ACTION_DOWN = 0;
+	public static final int ACTION_UP = 1;
+	public static final int ACTION_MOVE = 2;
+	public static final int ACTION_CANCEL = 3;
+
+	private final int action;
+	private final float x, y;
+
+	private MotionEvent(int action, float x, float y) {
+		this.action = action;
+		this.x = x;
+		this.y = y;
+	}
+
+	public static MotionEvent obtain(long downTime, long eventTime,
+			int action, float x, float y, int metaState) {
+		return new MotionEvent(action, x, y);
+	}
+
+	public final int getAction() {
+		return action;
+	}
+
+	public final float getX() {
+		return x;
+	}
+
+	public final float getY() {
+		return y;
+	}
+}
@@ -0,0 +1,139 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.view;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.util.AttributeSet;
+import android.view.animation.Animation;
+
+/**
+ * View attached to a visible window, with no parent to lay it out.
+ */
+public class View {
+
+	public static final int VISIBLE = 0;
+	public static final int INVISIBLE = 4;
+	public static final int GONE = 8;
+
+	private final Context context;
+
+	public View(Context context) {
+		this.context = context;
+	}
+
+	public View(Context context, AttributeSet attrs) {
+		this.context = context;
+	}
+
+	public interface OnClickListener {
+
+		void onClick(View v);
+	}
+
+	public Context getContext() {
+		return context;
+	}
+
+	public Resources getResources() {
+		return context.getResources();
+	}
+
+	public void setOnClickListener(OnClickListener listener) {
+	}
+
+	public void invalidate() {
+	}
+
+	public void requestLayout() {
+	}
+
+	public final int getWidth() {
+		return 0;
+	}
+
+	public final int getHeight() {
+		return 0;
+	}
+
+	public boolean isShown() {
+		return true;
+	}
+
+	public int getWindowVisibility() {
+		return VISIBLE;
+	}
+
+	public boolean postDelayed(Runnable action, long delayMillis) {
+		return true;
+	}
+
+	public boolean removeCallbacks(Runnable action) {
+		return true;
+	}
+
+	public void startAnimation(Animation animation) {
+	}
+
+	protected void onAttachedToWindow() {
+	}
+
+	protected void onDetachedFromWindow() {
+	}
+
+	protected void onWindowVisibilityChanged(int visibility) {
+	}
+
+	protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+	}
+
+	protected void onDraw(Canvas canvas) {
+	}
+
+	public boolean onTouchEvent(MotionEvent event) {
+		return false;
+	}
+
+	protected final void setMeasuredDimension(int measuredWidth,
+			int measuredHeight) {
+	}
+
+	public static int resolveSize(int size, int measureSpec) {
+		switch (MeasureSpec.getMode(measureSpec)) {
+		case MeasureSpec.EXACTLY:
+			return MeasureSpec.getSize(measureSpec);
+		case MeasureSpec.AT_MOST:
+			return Math.min(size, MeasureSpec.getSize(measureSpec));
+		default:
+			return size;
+		}
+	}
+
+	public static class MeasureSpec {
+
+		public static final int UNSPECIFIED = 0;
+		public static final int EXACTLY = 1 << 30;
+		public static final int AT_MOST = 2 << 30;
+
+		public static int getSize(int measureSpec) {
+			return measureSpec & ~(3 << 30);
+		}
+
+		public static int getMode(int measureSpec) {
+			return measureSpec & (3 << 30);
+		}
+	}
+}
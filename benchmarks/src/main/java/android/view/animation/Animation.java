@@ -0,0 +1,56 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.view.animation;
+
+/**
+ * Nothing is animated: a test ends an animation with {@link #end()}.
+ */
+public abstract class Animation {
+
+	public static final int ABSOLUTE = 0;
+	public static final int RELATIVE_TO_SELF = 1;
+	public static final int RELATIVE_TO_PARENT = 2;
+
+	private AnimationListener listener;
+
+	public void reset() {
+	}
+
+	public void setDuration(long durationMillis) {
+	}
+
+	public void setAnimationListener(AnimationListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Not in Android, where the animation ends with its duration.
+	 */
+	public void end() {
+		if (listener != null) {
+			listener.onAnimationStart(this);
+			listener.onAnimationEnd(this);
+		}
+	}
+
+	public interface AnimationListener {
+
+		void onAnimationStart(Animation animation);
+
+		void onAnimationEnd(Animation animation);
+
+		void onAnimationRepeat(Animation animation);
+	}
+}
@@ -0,0 +1,37 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.widget;
+
+import android.content.Context;
+import android.view.View;
+
+public abstract class AbsListView extends View {
+
+	public interface OnScrollListener {
+
+		int SCROLL_STATE_IDLE = 0;
+		int SCROLL_STATE_TOUCH_SCROLL = 1;
+		int SCROLL_STATE_FLING = 2;
+
+		void onScrollStateChanged(AbsListView view, int scrollState);
+
+		void onScroll(AbsListView view, int firstVisibleItem,
+				int visibleItemCount, int totalItemCount);
+	}
+
+	public AbsListView(Context context) {
+		super(context);
+	}
+}
@@ -0,0 +1,115 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Memory footprint of 100k things, in the compact store and in the cache of
+ * <code>ThingState</code> objects, reported as the <code>bytesPerThing</code>
+ * secondary result. The thing Id strings are allocated beforehand and are
+ * not counted, though the cache retains them and the compact store does
+ * not.
+ * 
+ * @author Philippe Bernard
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms512m", "-Xmx512m",
+		"-XX:+UseSerialGC" })
+public class CompactThingStoreBenchmark {
+
+	private static final int THING_COUNT = 100000;
+
+	/**
+	 * Retained heap, measured around each fill. The counter adds up the
+	 * iterations, hence a single measurement iteration.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Footprint {
+
+		public double bytesPerThing;
+
+		private long usedBefore;
+
+		void start() {
+			usedBefore = usedHeap();
+		}
+
+		void stop() {
+			bytesPerThing = (double) (usedHeap() - usedBefore) / THING_COUNT;
+		}
+	}
+
+	private String[] thingIds;
+	private ThingStatus[] statuses;
+	private Object filled;
+
+	@Setup
+	public void setUp() {
+		thingIds = Fixtures.thingIds(THING_COUNT);
+		statuses = ThingStatus.values();
+	}
+
+	@Benchmark
+	public void fillCompactStore(Footprint footprint) {
+		filled = null;
+		footprint.start();
+		CompactThingStore store = new CompactThingStore(THING_COUNT);
+		for (int i = 0; i < THING_COUNT; i++) {
+			store.put(thingIds[i], i * 7, statuses[i % statuses.length],
+					(i % 2) == 0, 0);
+		}
+		filled = store;
+		footprint.stop();
+	}
+
+	@Benchmark
+	public void fillThingCache(Footprint footprint) {
+		filled = null;
+		footprint.start();
+		ThingCache cache = new ThingCache(THING_COUNT, ThingCache.DEFAULT_TTL);
+		for (int i = 0; i < THING_COUNT; i++) {
+			cache.put(new ThingState(thingIds[i], i * 7, statuses[i
+					% statuses.length], (i % 2) == 0, 0));
+		}
+		filled = cache;
+		footprint.stop();
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,77 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.graphics.Canvas;
+
+/**
+ * Steady-state drawing of a button whose thing is loaded, with and without
+ * composite rendering. Run with
+ * <code>-prof gc</code>: <code>gc.alloc.rate.norm</code> is the number of
+ * bytes allocated per frame, and is expected to be 0.
+ * 
+ * @author Philippe Bernard
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms512m", "-Xmx512m" })
+public class DrawBenchmark {
+
+	@Param({ FlattrButton.BUTTON_STYLE_HORIZONTAL,
+			FlattrButton.BUTTON_STYLE_VERTICAL, FlattrButton.BUTTON_STYLE_MINI })
+	public String style;
+
+	@Param({ "true", "false" })
+	public boolean composite;
+
+	private FlattrButton button;
+	private Canvas canvas;
+
+	@Setup
+	public void setUp() throws IOException {
+		ThingState state = Fixtures.thingStates(Fixtures.thingIds(1))[0];
+		FlattrSDK.getThingCache().put(state);
+		FlattrSDK.setCompositeRendering(composite);
+
+		button = new FlattrButton(Fixtures.context());
+		button.setButtonStyle(style);
+		button.setThingId(state.getThingId());
+		canvas = new Canvas();
+	}
+
+	@Benchmark
+	public long draw() {
+		button.onDraw(canvas);
+		return canvas.getOperations();
+	}
+}
@@ -0,0 +1,96 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Delivery of one loaded thing to all the buttons bound to it: the waiters of
+ * the in-flight load, then the watchers of the thing.
+ * 
+ * @author Philippe Bernard
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms512m", "-Xmx512m" })
+public class FanOutBenchmark {
+
+	@Param({ "1", "10", "100" })
+	public int buttons;
+
+	private InFlightRegistry<ThingLoader.Callback> inFlight;
+	private Subscriptions<ThingLoader.Callback> watchers;
+	private ThingLoader.Callback[] callbacks;
+	private ThingState state;
+	private int delivered;
+
+	@Setup
+	public void setUp() {
+		inFlight = new InFlightRegistry<ThingLoader.Callback>();
+		watchers = new Subscriptions<ThingLoader.Callback>();
+		state = Fixtures.thingStates(Fixtures.thingIds(1))[0];
+		callbacks = new ThingLoader.Callback[buttons];
+		for (int i = 0; i < buttons; i++) {
+			callbacks[i] = new ThingLoader.Callback() {
+				public void onThingLoaded(ThingState state) {
+					delivered += state.getClicks();
+				}
+
+				public void onThingLoadFailed(String thingId, Exception error) {
+					delivered--;
+				}
+
+				public void onLastKnownState(ThingState state) {
+					delivered += state.getClicks();
+				}
+			};
+			watchers.add(state.getThingId(), callbacks[i]);
+		}
+	}
+
+	@Benchmark
+	public int loadAndDeliver() {
+		String thingId = state.getThingId();
+		for (ThingLoader.Callback callback : callbacks) {
+			inFlight.join(thingId, callback);
+		}
+		List<ThingLoader.Callback> waiters = inFlight.complete(thingId);
+		for (ThingLoader.Callback callback : waiters) {
+			callback.onThingLoaded(state);
+		}
+		for (ThingLoader.Callback callback : watchers.get(thingId)) {
+			if (!waiters.contains(callback)) {
+				callback.onThingLoaded(state);
+			}
+		}
+		return delivered;
+	}
+}
@@ -0,0 +1,77 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import android.content.Context;
+import android.content.res.Resources;
+
+/**
+ * Deterministic test data shared by the benchmarks.
+ * 
+ * @author Philippe Bernard
+ */
+final class Fixtures {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private Fixtures() {
+	}
+
+	/**
+	 * Generate thing Ids looking like real ones: 32 hexadecimal characters.
+	 * The same count always gives the same Ids.
+	 */
+	static String[] thingIds(int count) {
+		Random random = new Random(42);
+		String[] ids = new String[count];
+		char[] id = new char[32];
+		for (int i = 0; i < count; i++) {
+			for (int j = 0; j < id.length; j++) {
+				id[j] = HEX[random.nextInt(HEX.length)];
+			}
+			ids[i] = new String(id);
+		}
+		return ids;
+	}
+
+	static ThingState[] thingStates(String[] thingIds) {
+		ThingStatus[] statuses = ThingStatus.values();
+		ThingState[] states = new ThingState[thingIds.length];
+		for (int i = 0; i < thingIds.length; i++) {
+			states[i] = new ThingState(thingIds[i], i * 7,
+					statuses[i % statuses.length], (i % 2) == 0);
+		}
+		return states;
+	}
+
+	/**
+	 * A context with button-sized bitmaps and a private cache directory.
+	 */
+	static Context context() throws IOException {
+		return new Context(new Resources(60, 40, 1.5f), tempDir());
+	}
+
+	static File tempDir() throws IOException {
+		File dir = File.createTempFile("flattr-sdk-bench", "");
+		dir.delete();
+		dir.mkdirs();
+		dir.deleteOnExit();
+		return dir;
+	}
+}
@@ -0,0 +1,90 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.content.Context;
+import android.graphics.Canvas;
+
+/**
+ * Drawing a screen of buttons whose things are loaded: as many
+ * <code>FlattrButton</code> views, or a single
+ * <code>FlattrButtonGroup</code>.
+ * 
+ * @author Philippe Bernard
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms512m", "-Xmx512m" })
+public class GroupDrawBenchmark {
+
+	@Param({ "12", "48" })
+	public int count;
+
+	private FlattrButton[] buttons;
+	private FlattrButtonGroup group;
+	private Canvas canvas;
+
+	@Setup
+	public void setUp() throws IOException {
+		String[] thingIds = Fixtures.thingIds(count);
+		for (ThingState state : Fixtures.thingStates(thingIds)) {
+			FlattrSDK.getThingCache().put(state);
+		}
+		Context context = Fixtures.context();
+
+		buttons = new FlattrButton[count];
+		for (int i = 0; i < count; i++) {
+			buttons[i] = new FlattrButton(context);
+			buttons[i].setThingId(thingIds[i]);
+		}
+		group = new FlattrButtonGroup(context);
+		group.setColumnCount(4);
+		group.setThingIds(Arrays.asList(thingIds));
+		canvas = new Canvas();
+	}
+
+	@Benchmark
+	public long drawButtons() {
+		for (FlattrButton button : buttons) {
+			button.onDraw(canvas);
+		}
+		return canvas.getOperations();
+	}
+
+	@Benchmark
+	public long drawGroup() {
+		group.onDraw(canvas);
+		return canvas.getOperations();
+	}
+}
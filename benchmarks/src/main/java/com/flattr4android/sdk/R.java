@@ -0,0 +1,46 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+/**
+ * Stand-in for the resource Ids aapt generates in the Android build.
+ */
+public final class R {
+
+	public static final class drawable {
+		public static final int button_horizontal_left_flattr = 0x7f020000;
+		public static final int button_horizontal_left_flattred = 0x7f020001;
+		public static final int button_horizontal_left_inactive = 0x7f020002;
+		public static final int button_horizontal_left_mything = 0x7f020003;
+		public static final int button_horizontal_right = 0x7f020004;
+		public static final int button_mini_left_flattr = 0x7f020005;
+		public static final int button_mini_left_flattred = 0x7f020006;
+		public static final int button_mini_left_inactive = 0x7f020007;
+		public static final int button_mini_left_mything = 0x7f020008;
+		public static final int button_mini_right = 0x7f020009;
+		public static final int button_vertical_bottom_flattr = 0x7f02000a;
+		public static final int button_vertical_bottom_flattred = 0x7f02000b;
+		public static final int button_vertical_bottom_inactive = 0x7f02000c;
+		public static final int button_vertical_bottom_mything = 0x7f02000d;
+		public static final int button_vertical_middle = 0x7f02000e;
+		public static final int button_vertical_top = 0x7f02000f;
+	}
+
+	public static final class string {
+		public static final int choose_option = 0x7f030000;
+		public static final int go_to_flattr = 0x7f030001;
+		public static final int install_app = 0x7f030002;
+	}
+}
@@ -0,0 +1,78 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups and updates of the in-memory thing cache.
+ * 
+ * @author Philippe Bernard
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms512m", "-Xmx512m" })
+public class ThingCacheBenchmark {
+
+	@Param({ "100", "500" })
+	public int size;
+
+	private ThingCache cache;
+	private String[] thingIds;
+	private ThingState[] states;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		cache = new ThingCache(size, ThingCache.DEFAULT_TTL);
+		// The second half of the Ids is never cached
+		thingIds = Fixtures.thingIds(2 * size);
+		states = Fixtures.thingStates(thingIds);
+		for (int i = 0; i < size; i++) {
+			cache.put(states[i]);
+		}
+	}
+
+	@Benchmark
+	public ThingState getHit() {
+		return cache.get(thingIds[next++ % size]);
+	}
+
+	@Benchmark
+	public ThingState getMiss() {
+		return cache.get(thingIds[size + (next++ % size)]);
+	}
+
+	@Benchmark
+	public void putEvicting() {
+		// Cycle through twice as many things as the cache can hold
+		cache.put(states[next++ % states.length]);
+	}
+}
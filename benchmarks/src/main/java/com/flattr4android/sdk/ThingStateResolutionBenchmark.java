@@ -0,0 +1,89 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Resolution of the state a button displays when it is bound to a thing:
+ * from the memory cache when the thing is fresh, from the persistent snapshot
+ * when it is not in memory anymore.
+ * 
+ * @author Philippe Bernard
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms512m", "-Xmx512m" })
+public class ThingStateResolutionBenchmark {
+
+	private static final int THING_COUNT = 200;
+
+	private FlattrButton button;
+	private ThingCache snapshotOnlyCache;
+	private String[] thingIds;
+	private int next;
+
+	@Setup
+	public void setUp() throws IOException {
+		button = new FlattrButton(Fixtures.context());
+
+		thingIds = Fixtures.thingIds(THING_COUNT);
+		ThingState[] states = Fixtures.thingStates(thingIds);
+		for (ThingState state : states) {
+			FlattrSDK.getThingCache().put(state);
+		}
+
+		// Snapshot written by a previous run, nothing in memory yet
+		File snapshotFile = new File(Fixtures.tempDir(), "snapshot.dat");
+		ThingSnapshotStore previousRun = new ThingSnapshotStore(snapshotFile,
+				ThingSnapshotStore.DEFAULT_MAX_SIZE);
+		previousRun.load();
+		previousRun.putAll(Arrays.asList(states));
+		snapshotOnlyCache = new ThingCache(ThingCache.DEFAULT_MAX_SIZE,
+				ThingCache.DEFAULT_TTL);
+		ThingSnapshotStore snapshot = new ThingSnapshotStore(snapshotFile,
+				ThingSnapshotStore.DEFAULT_MAX_SIZE);
+		snapshot.load();
+		snapshotOnlyCache.setSnapshotStore(snapshot);
+	}
+
+	@Benchmark
+	public int bindCachedThing() {
+		button.setThingId(thingIds[next++ % THING_COUNT]);
+		return button.getThingStatus().ordinal();
+	}
+
+	@Benchmark
+	public ThingState resolveFromSnapshot() {
+		return snapshotOnlyCache.getLatest(thingIds[next++ % THING_COUNT]);
+	}
+}
@@ -0,0 +1,153 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import android.content.Context;
+import android.graphics.Canvas;
+
+/**
+ * Checks that drawing buttons whose things are loaded allocates nothing, the
+ * guarantee <code>DrawBenchmark</code> measures with <code>-prof gc</code>.
+ * 
+ * @author Philippe Bernard
+ */
+public class DrawAllocationTest {
+
+	private static final int WARMUP_FRAMES = 10000;
+	private static final int MAX_WARMUP_WINDOWS = 100;
+	private static final int QUIET_WINDOWS = 5;
+	private static final int FRAMES = 1000;
+	private static final int WINDOWS = 5;
+
+	private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+	private final CompilationMXBean compilation = ManagementFactory
+			.getCompilationMXBean();
+	private String[] thingIds;
+	private Context context;
+	private Canvas canvas;
+
+	@Before
+	public void setUp() throws IOException {
+		assumeTrue(threads.isThreadAllocatedMemorySupported());
+		assumeTrue(compilation.isCompilationTimeMonitoringSupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+		thingIds = Fixtures.thingIds(12);
+		for (ThingState state : Fixtures.thingStates(thingIds)) {
+			FlattrSDK.getThingCache().put(state);
+		}
+		context = Fixtures.context();
+		canvas = new Canvas();
+	}
+
+	@After
+	public void tearDown() {
+		FlattrSDK.setCompositeRendering(false);
+	}
+
+	@Test
+	public void drawsButtonWithoutAllocating() throws IOException {
+		String[] styles = { FlattrButton.BUTTON_STYLE_HORIZONTAL,
+				FlattrButton.BUTTON_STYLE_VERTICAL,
+				FlattrButton.BUTTON_STYLE_MINI };
+		for (boolean composite : new boolean[] { false, true }) {
+			FlattrSDK.setCompositeRendering(composite);
+			for (String style : styles) {
+				final FlattrButton button = new FlattrButton(context);
+				button.setButtonStyle(style);
+				button.setThingId(thingIds[0]);
+				assertNoAllocation(style + (composite ? ", composite" : ""),
+						new Runnable() {
+							public void run() {
+								button.onDraw(canvas);
+							}
+						});
+			}
+		}
+	}
+
+	@Test
+	public void drawsGroupWithoutAllocating() {
+		final FlattrButtonGroup group = new FlattrButtonGroup(context);
+		group.setColumnCount(4);
+		group.setThingIds(Arrays.asList(thingIds));
+		assertNoAllocation("group", new Runnable() {
+			public void run() {
+				group.onDraw(canvas);
+			}
+		});
+	}
+
+	private void assertNoAllocation(String message, Runnable frame) {
+		long[] windows = allocatedBytes(frame);
+		assertArrayEquals(message + ": " + Arrays.toString(windows),
+				new long[WINDOWS], windows);
+	}
+
+	/**
+	 * @return The bytes allocated to draw frames in each window, once in
+	 *         steady state. The warm-up lasts until the JIT compiler is done
+	 *         with the drawing code: the thread may allocate while it
+	 *         switches to the compiled code.
+	 */
+	private long[] allocatedBytes(Runnable frame) {
+		int quietWindows = 0;
+		for (int i = 0; (i < MAX_WARMUP_WINDOWS)
+				&& (quietWindows < QUIET_WINDOWS); i++) {
+			long compilationTime = compilation.getTotalCompilationTime();
+			long start = currentThreadAllocatedBytes();
+			drawFrames(frame, WARMUP_FRAMES);
+			if ((currentThreadAllocatedBytes() == start)
+					&& (compilation.getTotalCompilationTime() == compilationTime)) {
+				quietWindows++;
+			} else {
+				quietWindows = 0;
+			}
+		}
+		long[] windows = new long[WINDOWS];
+		for (int window = 0; window < WINDOWS; window++) {
+			long start = currentThreadAllocatedBytes();
+			drawFrames(frame, FRAMES);
+			windows[window] = currentThreadAllocatedBytes() - start;
+		}
+		return windows;
+	}
+
+	/**
+	 * The same loop warms up and measures, so the measure does not run the
+	 * loop before it is compiled.
+	 */
+	private static void drawFrames(Runnable frame, int count) {
+		for (int i = 0; i < count; i++) {
+			frame.run();
+		}
+	}
+
+	private long currentThreadAllocatedBytes() {
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
@@ -0,0 +1,160 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.shredzone.flattr4j.FlattrService;
+import org.shredzone.flattr4j.connector.FlattrObject;
+import org.shredzone.flattr4j.exception.FlattrException;
+import org.shredzone.flattr4j.exception.NotFoundException;
+import org.shredzone.flattr4j.model.Flattr;
+import org.shredzone.flattr4j.model.Thing;
+import org.shredzone.flattr4j.model.ThingId;
+import org.shredzone.flattr4j.model.User;
+
+/**
+ * In-memory Flattr Rest API, with the user's things and flattrs listed most
+ * recent first. Records the calls, and fails them on demand.
+ * 
+ * @author Philippe Bernard
+ */
+class FakeFlattrService implements InvocationHandler {
+
+	final List<String> myThingIds = new ArrayList<String>();
+	final List<String> myFlattredIds = new ArrayList<String>();
+	final Map<String, Integer> clicks = new HashMap<String, Integer>();
+	// Name of each method called, in order
+	final List<String> calls = Collections
+			.synchronizedList(new ArrayList<String>());
+	// Ids of the things of each getThing(s) call
+	final List<List<String>> thingRequests = Collections
+			.synchronizedList(new ArrayList<List<String>>());
+	final List<String> clickedIds = Collections
+			.synchronizedList(new ArrayList<String>());
+	// Things the API does not know
+	final Set<String> unknownIds = Collections
+			.synchronizedSet(new HashSet<String>());
+	// Thrown by the next calls, if not null
+	volatile FlattrException failure;
+	// Holds the next calls until it is released, if not null
+	volatile CountDownLatch gate;
+
+	FlattrService create() {
+		return (FlattrService) Proxy.newProxyInstance(getClass()
+				.getClassLoader(), new Class<?>[] { FlattrService.class }, this);
+	}
+
+	public Object invoke(Object proxy, Method method, Object[] args)
+			throws Throwable {
+		String name = method.getName();
+		if (method.getDeclaringClass() == Object.class) {
+			if (name.equals("equals")) {
+				return proxy == args[0];
+			}
+			if (name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			}
+			return "FakeFlattrService";
+		}
+		calls.add(name);
+		CountDownLatch currentGate = gate;
+		if (currentGate != null) {
+			currentGate.await();
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		if (name.equals("getMyself")) {
+			return new User(object("{\"username\":\"me\"}"));
+		}
+		if (name.equals("getMyThings")) {
+			List<Thing> things = new ArrayList<Thing>();
+			for (String thingId : page(myThingIds, args)) {
+				things.add(thing(thingId));
+			}
+			return things;
+		}
+		if (name.equals("getMyFlattrs")) {
+			List<Flattr> flattrs = new ArrayList<Flattr>();
+			for (String thingId : page(myFlattredIds, args)) {
+				flattrs.add(new Flattr(object("{\"thing\":{\"id\":\""
+						+ thingId + "\"}}")));
+			}
+			return flattrs;
+		}
+		if (name.equals("getThing")) {
+			String thingId = ((ThingId) args[0]).getThingId();
+			thingRequests.add(Collections.singletonList(thingId));
+			checkKnown(thingId);
+			return thing(thingId);
+		}
+		if (name.equals("getThings") && (args[0] instanceof Collection)) {
+			List<String> thingIds = new ArrayList<String>();
+			List<Thing> things = new ArrayList<Thing>();
+			for (Object thingId : (Collection<?>) args[0]) {
+				String id = ((ThingId) thingId).getThingId();
+				thingIds.add(id);
+				if (!unknownIds.contains(id)) {
+					things.add(thing(id));
+				}
+			}
+			thingRequests.add(thingIds);
+			return things;
+		}
+		if (name.equals("click") && (args[0] instanceof ThingId)) {
+			String thingId = ((ThingId) args[0]).getThingId();
+			checkKnown(thingId);
+			clickedIds.add(thingId);
+			return null;
+		}
+		throw new UnsupportedOperationException(name);
+	}
+
+	private void checkKnown(String thingId) throws NotFoundException {
+		if (unknownIds.contains(thingId)) {
+			throw new NotFoundException("not_found", "No thing " + thingId);
+		}
+	}
+
+	private Thing thing(String thingId) {
+		Integer thingClicks = clicks.get(thingId);
+		return new Thing(object("{\"id\":\"" + thingId + "\",\"flattrs\":"
+				+ ((thingClicks != null) ? thingClicks : 0)
+				+ ",\"flattred\":false,\"owner\":{\"username\":\"owner\"}}"));
+	}
+
+	private static List<String> page(List<String> ids, Object[] args) {
+		int count = (Integer) args[0];
+		int page = (Integer) args[1];
+		int from = Math.min(ids.size(), (page - 1) * count);
+		return ids.subList(from, Math.min(ids.size(), from + count));
+	}
+
+	private static FlattrObject object(String json) {
+		return new FlattrObject(json);
+	}
+}
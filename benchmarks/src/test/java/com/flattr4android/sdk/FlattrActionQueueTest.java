@@ -0,0 +1,190 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.shredzone.flattr4j.exception.FlattrException;
+
+import android.content.Context;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Checks that flattr actions are recorded, persisted, sent in batches, and
+ * retried after a failure.
+ * 
+ * @author Philippe Bernard
+ */
+public class FlattrActionQueueTest {
+
+	private static final long TIMEOUT = 5000;
+
+	private final FakeFlattrService service = new FakeFlattrService();
+	private final Looper looper = Looper.getMainLooper();
+	private Context context;
+	private File file;
+	private FlattrActionQueue queue;
+
+	@Before
+	public void setUp() throws IOException {
+		context = Fixtures.context();
+		file = new File(context.getFilesDir(), "actions.dat");
+		queue = new FlattrActionQueue(context, file);
+	}
+
+	@After
+	public void tearDown() {
+		looper.dropTasks();
+	}
+
+	@Test
+	public void recordsActions() {
+		ThingCache cache = FlattrSDK.getThingCache();
+		cache.put(new ThingState("queue-known", 5, ThingStatus.DEFAULT, true));
+		cache.put(new ThingState("queue-flattred", 3, ThingStatus.FLATTRED,
+				true));
+
+		assertTrue(queue.flattr("queue-new"));
+		assertFalse(queue.flattr("queue-new"));
+		assertFalse(queue.flattr("queue-flattred"));
+		assertTrue(queue.flattr("queue-known"));
+		assertEquals(2, queue.getPendingCount());
+
+		// Displayed as flattred at once
+		ThingState state = cache.getLatest("queue-known");
+		assertEquals(ThingStatus.FLATTRED, state.getStatus());
+		assertEquals(6, state.getClicks());
+		// Even when a load does not know the action yet
+		state = queue.applyPending(new ThingState("queue-new", 1,
+				ThingStatus.DEFAULT, false));
+		assertEquals(ThingStatus.FLATTRED, state.getStatus());
+		assertEquals(2, state.getClicks());
+		state = new ThingState("queue-other", 1, ThingStatus.DEFAULT, false);
+		assertEquals(state, queue.applyPending(state));
+	}
+
+	@Test
+	public void persistsActions() throws Exception {
+		queue.flattr("queue-a");
+		queue.flattr("queue-b");
+		queue.flattr("queue-c");
+		FlattrActionQueue reloaded = awaitWritten(3);
+
+		reloaded.setFlattrService(service.create());
+		awaitPendingCount(reloaded, 0);
+		assertEquals(Arrays.asList("queue-a", "queue-b", "queue-c"),
+				service.clickedIds);
+		// The sent actions are removed from the file too
+		awaitWritten(0);
+	}
+
+	@Test
+	public void sendsAllActionsInBatches() throws Exception {
+		List<String> thingIds = new ArrayList<String>();
+		for (int i = 0; i < 2 * FlattrActionQueue.BATCH_SIZE + 5; i++) {
+			thingIds.add("queue-batch-" + i);
+			queue.flattr("queue-batch-" + i);
+		}
+		queue.setFlattrService(service.create());
+		awaitPendingCount(queue, 0);
+		assertEquals(thingIds, service.clickedIds);
+		assertEquals(Collections.singleton("click"),
+				new HashSet<String>(service.calls));
+	}
+
+	@Test
+	public void dropsRejectedActions() throws Exception {
+		looper.queueTasks();
+		service.unknownIds.add("queue-unknown");
+		queue.flattr("queue-unknown");
+		queue.flattr("queue-valid");
+		queue.setFlattrService(service.create());
+		awaitPendingCount(queue, 0);
+		assertEquals(Collections.singletonList("queue-valid"),
+				service.clickedIds);
+		// No retry
+		assertEquals(0, looper.getQueuedTaskCount());
+	}
+
+	@Test
+	public void retriesAfterFailure() throws Exception {
+		looper.queueTasks();
+		service.failure = new FlattrException("Network down");
+		queue.setFlattrService(service.create());
+		queue.flattr("queue-retried");
+		// The retry is the only task posted
+		assertTrue(looper.awaitTask(TIMEOUT));
+		service.failure = null;
+		assertEquals(Collections.singletonList("click"), service.calls);
+
+		long start = SystemClock.uptimeMillis();
+		looper.advanceClock(FlattrActionQueue.INITIAL_RETRY_DELAY / 2 - 1);
+		// Not sent again before the backoff delay
+		queue.flush();
+		assertEquals(1, queue.getPendingCount());
+		assertTrue(looper.runNextDelayedTask());
+		long delay = SystemClock.uptimeMillis() - start;
+		assertTrue(delay >= FlattrActionQueue.INITIAL_RETRY_DELAY / 2);
+		assertTrue(delay <= FlattrActionQueue.INITIAL_RETRY_DELAY);
+
+		awaitPendingCount(queue, 0);
+		assertEquals(Collections.singletonList("queue-retried"),
+				service.clickedIds);
+	}
+
+	/**
+	 * Wait for the file to list the given number of actions, written in the
+	 * background.
+	 * 
+	 * @return The queue read from the file.
+	 */
+	private FlattrActionQueue awaitWritten(int count)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (true) {
+			FlattrActionQueue reloaded = new FlattrActionQueue(context, file);
+			if ((reloaded.getPendingCount() == count)
+					|| (System.currentTimeMillis() > deadline)) {
+				assertEquals(count, reloaded.getPendingCount());
+				return reloaded;
+			}
+			Thread.sleep(10);
+		}
+	}
+
+	private static void awaitPendingCount(FlattrActionQueue queue, int count)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while ((queue.getPendingCount() != count)
+				&& (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(10);
+		}
+		assertEquals(count, queue.getPendingCount());
+	}
+}
@@ -0,0 +1,163 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.os.Looper;
+import android.view.animation.Animation;
+
+/**
+ * Checks what an attached button displays as the states of its thing come
+ * in.
+ * 
+ * @author Philippe Bernard
+ */
+public class FlattrButtonTest {
+
+	/**
+	 * Records the redraws and the animations.
+	 */
+	private static class ObservedButton extends FlattrButton {
+		int invalidateCount = 0;
+		final List<Animation> animations = new ArrayList<Animation>();
+
+		ObservedButton(Context context) {
+			super(context);
+		}
+
+		@Override
+		public void invalidate() {
+			invalidateCount++;
+		}
+
+		@Override
+		public void startAnimation(Animation animation) {
+			animations.add(animation);
+		}
+
+		String drawClicks() {
+			Canvas canvas = new Canvas();
+			onDraw(canvas);
+			return canvas.getLastText();
+		}
+	}
+
+	private static final long TIMEOUT = 5000;
+
+	private final Looper looper = Looper.getMainLooper();
+	private ObservedButton button;
+
+	@Before
+	public void setUp() throws IOException {
+		looper.queueTasks();
+		FlattrSDK.setCompositeRendering(false);
+		button = new ObservedButton(Fixtures.context());
+		button.onAttachedToWindow();
+	}
+
+	@After
+	public void tearDown() {
+		button.onDetachedFromWindow();
+		FlattrSDK.setCompositeRendering(true);
+		looper.dropTasks();
+	}
+
+	@Test
+	public void skipsRedrawOfSameState() {
+		cache(new ThingState("button-same", 5, ThingStatus.DEFAULT, true));
+		button.bind("button-same");
+		assertEquals("5", button.drawClicks());
+		button.invalidateCount = 0;
+
+		// Typically a refresh
+		ThingLoader.publish(new ThingState("button-same", 5,
+				ThingStatus.DEFAULT, true));
+		looper.runUntilIdle();
+		assertEquals(0, button.invalidateCount);
+		assertEquals(0, button.animations.size());
+
+		ThingLoader.publish(new ThingState("button-same", 6,
+				ThingStatus.DEFAULT, true));
+		looper.runUntilIdle();
+		assertEquals(1, button.animations.size());
+		button.animations.get(0).end();
+		assertEquals("6", button.drawClicks());
+	}
+
+	@Test
+	public void ignoresAnimationOfPreviousBinding() {
+		cache(new ThingState("button-recycled", 5, ThingStatus.DEFAULT, true));
+		cache(new ThingState("button-new", 42, ThingStatus.DEFAULT, true));
+		button.bind("button-recycled");
+		ThingLoader.publish(new ThingState("button-recycled", 6,
+				ThingStatus.DEFAULT, true));
+		looper.runUntilIdle();
+		assertEquals(1, button.animations.size());
+
+		// Recycled while hidden by the animation
+		button.bind("button-new");
+		assertEquals("42", button.drawClicks());
+		button.animations.get(0).end();
+		// No "show again" animation
+		assertEquals(1, button.animations.size());
+		assertEquals("42", button.drawClicks());
+	}
+
+	@Test
+	public void ignoresLoadOfPreviousBinding() throws Exception {
+		FakeFlattrService service = new FakeFlattrService();
+		service.clicks.put("button-loaded", 7);
+		FlattrSDK.setOpenService(service.create());
+		ObservedButton other = new ObservedButton(Fixtures.context());
+		other.onAttachedToWindow();
+		try {
+			button.bind("button-loaded");
+			// The load goes on for the other button
+			other.bind("button-loaded");
+			cache(new ThingState("button-bound", 42, ThingStatus.DEFAULT,
+					true));
+			button.bind("button-bound");
+
+			// The results may come in while the clock moves
+			looper.advanceClock(ThingLoader.BATCH_WINDOW);
+			while (other.animations.isEmpty()) {
+				assertTrue(looper.runNextTask(TIMEOUT));
+			}
+			other.animations.get(0).end();
+			assertEquals("7", other.drawClicks());
+			assertEquals(0, button.animations.size());
+			assertEquals("42", button.drawClicks());
+		} finally {
+			other.onDetachedFromWindow();
+			FlattrSDK.setOpenService(null);
+		}
+	}
+
+	private static void cache(ThingState state) {
+		FlattrSDK.getThingCache().put(state);
+	}
+}
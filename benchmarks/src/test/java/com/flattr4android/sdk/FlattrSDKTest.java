@@ -0,0 +1,61 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Checks the settings of the SDK that outlive its first use.
+ * 
+ * @author Philippe Bernard
+ */
+public class FlattrSDKTest {
+
+	@After
+	public void tearDown() {
+		FlattrSDK.setConnectivitySource(null);
+	}
+
+	@Test
+	public void reinstallsConnectivityManagerSource() throws IOException {
+		FlattrSDK.setConnectivitySource(new ConnectivitySource() {
+			public boolean isConnected() {
+				return true;
+			}
+
+			public boolean isMetered() {
+				return true;
+			}
+
+			public boolean isSlow() {
+				return false;
+			}
+		});
+		FlattrSDK.initThingCache(Fixtures.context());
+		LoadingPolicy policy = FlattrSDK.getLoadingPolicy();
+		assertTrue(policy.hasConnectivitySource());
+
+		FlattrSDK.setConnectivitySource(null);
+		// Not the default fast network, but the ConnectivityManager, which
+		// reports an unknown network, free, without the permission
+		assertTrue(policy.hasConnectivitySource());
+		assertTrue(policy.isUrgent(LoaderExecutor.PRIORITY_BACKGROUND, 0));
+	}
+}
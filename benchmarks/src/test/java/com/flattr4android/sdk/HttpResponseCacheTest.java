@@ -0,0 +1,193 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+/**
+ * Checks the conditional requests of the response cache, and the replay of
+ * the cached responses.
+ * 
+ * @author Philippe Bernard
+ */
+public class HttpResponseCacheTest {
+
+	private static final String URI = "/rest/v2/things/12345";
+	private static final String TOKEN = "Bearer secret-token";
+	private static final String BODY = "{\"id\":12345}";
+
+	private final HttpResponseCache cache = new HttpResponseCache(2);
+
+	@Test
+	public void revalidatesWithETag() throws Exception {
+		HttpContext context = new BasicHttpContext();
+		HttpRequest request = request(URI, TOKEN);
+		cache.process(request, context);
+		assertFalse(request.containsHeader("If-None-Match"));
+		HttpResponse response = ok(BODY);
+		response.setHeader("ETag", "\"v1\"");
+		cache.process(response, context);
+		// Still readable by the caller
+		assertEquals(BODY, EntityUtils.toString(response.getEntity()));
+
+		context = new BasicHttpContext();
+		request = request(URI, TOKEN);
+		cache.process(request, context);
+		assertEquals("\"v1\"", request.getFirstHeader("If-None-Match")
+				.getValue());
+		assertFalse(request.containsHeader("If-Modified-Since"));
+	}
+
+	@Test
+	public void revalidatesWithLastModified() throws Exception {
+		String date = "Tue, 15 Nov 2011 08:12:31 GMT";
+		HttpResponse response = ok(BODY);
+		response.setHeader("Last-Modified", date);
+		exchange(request(URI, TOKEN), response);
+
+		HttpRequest request = request(URI, TOKEN);
+		cache.process(request, new BasicHttpContext());
+		assertEquals(date, request.getFirstHeader("If-Modified-Since")
+				.getValue());
+		assertFalse(request.containsHeader("If-None-Match"));
+	}
+
+	@Test
+	public void replaysCachedResponse() throws Exception {
+		HttpResponse response = ok(BODY);
+		response.setHeader("ETag", "\"v1\"");
+		((StringEntity) response.getEntity()).setContentEncoding("gzip");
+		exchange(request(URI, TOKEN), response);
+
+		HttpResponse notModified = new BasicHttpResponse(HttpVersion.HTTP_1_1,
+				HttpStatus.SC_NOT_MODIFIED, "Not Modified");
+		exchange(request(URI, TOKEN), notModified);
+		assertEquals(HttpStatus.SC_OK, notModified.getStatusLine()
+				.getStatusCode());
+		assertEquals("application/json", notModified.getEntity()
+				.getContentType().getValue());
+		assertEquals("gzip", notModified.getEntity().getContentEncoding()
+				.getValue());
+		assertEquals(BODY, EntityUtils.toString(notModified.getEntity()));
+	}
+
+	@Test
+	public void leavesUnknownNotModified() throws Exception {
+		HttpResponse notModified = new BasicHttpResponse(HttpVersion.HTTP_1_1,
+				HttpStatus.SC_NOT_MODIFIED, "Not Modified");
+		exchange(request(URI, TOKEN), notModified);
+		assertEquals(HttpStatus.SC_NOT_MODIFIED, notModified.getStatusLine()
+				.getStatusCode());
+		assertNull(notModified.getEntity());
+	}
+
+	@Test
+	public void forgetsResponseWithoutValidator() throws Exception {
+		HttpResponse response = ok(BODY);
+		response.setHeader("ETag", "\"v1\"");
+		exchange(request(URI, TOKEN), response);
+		exchange(request(URI, TOKEN), ok(BODY));
+
+		HttpRequest request = request(URI, TOKEN);
+		cache.process(request, new BasicHttpContext());
+		assertFalse(request.containsHeader("If-None-Match"));
+	}
+
+	@Test
+	public void separatesUsers() throws Exception {
+		HttpResponse response = ok(BODY);
+		response.setHeader("ETag", "\"v1\"");
+		exchange(request(URI, TOKEN), response);
+
+		HttpRequest request = request(URI, "Bearer other-token");
+		cache.process(request, new BasicHttpContext());
+		assertFalse(request.containsHeader("If-None-Match"));
+		request = request(URI, null);
+		cache.process(request, new BasicHttpContext());
+		assertFalse(request.containsHeader("If-None-Match"));
+	}
+
+	@Test
+	public void doesNotKeepToken() throws Exception {
+		HttpContext context = new BasicHttpContext();
+		cache.process(request(URI, TOKEN), context);
+		String key = (String) context
+				.getAttribute(HttpResponseCache.CACHE_KEY_ATTRIBUTE);
+		assertTrue(key.startsWith(URI));
+		assertFalse(key.contains("secret-token"));
+	}
+
+	@Test
+	public void ignoresOtherMethods() throws Exception {
+		HttpContext context = new BasicHttpContext();
+		HttpRequest request = new BasicHttpRequest("POST", URI);
+		cache.process(request, context);
+		assertNull(context.getAttribute(HttpResponseCache.CACHE_KEY_ATTRIBUTE));
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsed() throws Exception {
+		for (String uri : new String[] { "/a", "/b", "/c" }) {
+			HttpResponse response = ok(BODY);
+			response.setHeader("ETag", "\"v1\"");
+			exchange(request(uri, TOKEN), response);
+		}
+		HttpRequest request = request("/a", TOKEN);
+		cache.process(request, new BasicHttpContext());
+		assertFalse(request.containsHeader("If-None-Match"));
+		request = request("/c", TOKEN);
+		cache.process(request, new BasicHttpContext());
+		assertTrue(request.containsHeader("If-None-Match"));
+	}
+
+	private void exchange(HttpRequest request, HttpResponse response)
+			throws Exception {
+		HttpContext context = new BasicHttpContext();
+		cache.process(request, context);
+		cache.process(response, context);
+	}
+
+	private static HttpRequest request(String uri, String authorization) {
+		HttpRequest request = new BasicHttpRequest("GET", uri);
+		if (authorization != null) {
+			request.setHeader("Authorization", authorization);
+		}
+		return request;
+	}
+
+	private static HttpResponse ok(String body) throws Exception {
+		HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1,
+				HttpStatus.SC_OK, "OK");
+		StringEntity entity = new StringEntity(body, "UTF-8");
+		entity.setContentType("application/json");
+		response.setEntity(entity);
+		return response;
+	}
+}
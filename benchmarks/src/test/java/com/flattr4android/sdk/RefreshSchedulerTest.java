@@ -0,0 +1,171 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.shredzone.flattr4j.OpenService;
+
+import android.content.ContentResolver;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Checks the refresh intervals of the visible things, and the grouping of
+ * their refreshes.
+ * 
+ * @author Philippe Bernard
+ */
+public class RefreshSchedulerTest {
+
+	private static final long TIMEOUT = 5000;
+
+	private final FakeFlattrService service = new FakeFlattrService();
+	private final Looper looper = Looper.getMainLooper();
+	private final List<String> registeredIds = new ArrayList<String>();
+	private OpenService openService;
+	private ContentResolver contentResolver;
+
+	@Before
+	public void setUp() throws IOException {
+		looper.queueTasks();
+		openService = service.create();
+		contentResolver = Fixtures.context().getContentResolver();
+	}
+
+	@After
+	public void tearDown() {
+		for (String thingId : registeredIds) {
+			RefreshScheduler.unregister(thingId);
+		}
+		looper.dropTasks();
+	}
+
+	@Test
+	public void lengthensIntervalOfQuietThing() throws InterruptedException {
+		service.clicks.put("refresh-quiet", 3);
+		register("refresh-quiet", 3);
+		long interval = RefreshScheduler.INITIAL_INTERVAL;
+		for (int i = 0; i < 6; i++) {
+			assertEquals(interval, awaitRefresh());
+			interval = Math.min(RefreshScheduler.MAX_INTERVAL, 2 * interval);
+		}
+		assertEquals(RefreshScheduler.MAX_INTERVAL, awaitRefresh());
+	}
+
+	@Test
+	public void shortensIntervalOfHotThing() throws InterruptedException {
+		register("refresh-hot", 3);
+		long interval = RefreshScheduler.INITIAL_INTERVAL;
+		for (int i = 0; i < 4; i++) {
+			service.clicks.put("refresh-hot", 4 + i);
+			assertEquals(interval, awaitRefresh());
+			interval = Math.max(RefreshScheduler.MIN_INTERVAL, interval / 2);
+		}
+		assertEquals(RefreshScheduler.MIN_INTERVAL, interval);
+		service.clicks.put("refresh-hot", 10);
+		assertEquals(RefreshScheduler.MIN_INTERVAL, awaitRefresh());
+	}
+
+	@Test
+	public void keepsIntervalAfterFailure() throws InterruptedException {
+		service.unknownIds.add("refresh-failed");
+		register("refresh-failed", 3);
+		assertEquals(RefreshScheduler.INITIAL_INTERVAL, awaitRefresh());
+		assertEquals(RefreshScheduler.INITIAL_INTERVAL, awaitRefresh());
+	}
+
+	@Test
+	public void groupsThingsDueTogether() throws InterruptedException {
+		register("refresh-first", 3);
+		looper.advanceClock(RefreshScheduler.GROUPING_DELAY / 2);
+		register("refresh-second", 3);
+		looper.advanceClock(RefreshScheduler.GROUPING_DELAY);
+		// Due later, alone
+		register("refresh-third", 3);
+
+		awaitRefresh();
+		assertEquals(1, service.thingRequests.size());
+		List<String> requestedIds = new ArrayList<String>(
+				service.thingRequests.get(0));
+		Collections.sort(requestedIds);
+		assertEquals(Arrays.asList("refresh-first", "refresh-second"),
+				requestedIds);
+		awaitRefresh();
+		assertEquals(Collections.singletonList("refresh-third"),
+				service.thingRequests.get(1));
+	}
+
+	@Test
+	public void stopsWithLastVisibleButton() {
+		register("refresh-hidden", 3);
+		register("refresh-hidden", 3);
+		RefreshScheduler.unregister("refresh-hidden");
+		assertEquals(1, looper.getQueuedTaskCount());
+		RefreshScheduler.unregister("refresh-hidden");
+		registeredIds.clear();
+		assertEquals(0, looper.getQueuedTaskCount());
+		looper.advanceClock(RefreshScheduler.MAX_INTERVAL);
+		assertEquals(0, service.calls.size());
+	}
+
+	@Test
+	public void remembersIntervalOfHiddenThing() throws InterruptedException {
+		service.clicks.put("refresh-back", 3);
+		register("refresh-back", 3);
+		awaitRefresh();
+		awaitRefresh();
+		RefreshScheduler.unregister("refresh-back");
+		registeredIds.clear();
+
+		register("refresh-back", 3);
+		assertEquals(4 * RefreshScheduler.INITIAL_INTERVAL, awaitRefresh());
+	}
+
+	private void register(String thingId, int clicks) {
+		RefreshScheduler.register(contentResolver, openService, thingId,
+				clicks);
+		registeredIds.add(thingId);
+	}
+
+	/**
+	 * Run the timer, then the load of the things it refreshes, until the
+	 * results are delivered.
+	 * 
+	 * @return The time elapsed until the timer fired.
+	 */
+	private long awaitRefresh() throws InterruptedException {
+		long start = SystemClock.uptimeMillis();
+		int requestCount = service.thingRequests.size();
+		// The timer
+		assertTrue(looper.runNextDelayedTask());
+		long delay = SystemClock.uptimeMillis() - start;
+		// The end of the batch window, then the delivery of the results
+		assertTrue(looper.runNextDelayedTask());
+		assertTrue(looper.runNextTask(TIMEOUT));
+		assertEquals(requestCount + 1, service.thingRequests.size());
+		return delay;
+	}
+}
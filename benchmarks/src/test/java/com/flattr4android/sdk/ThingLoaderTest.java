@@ -0,0 +1,266 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.shredzone.flattr4j.OpenService;
+
+import android.content.ContentResolver;
+import android.os.Looper;
+
+/**
+ * Checks how loads are shared, batched and cancelled. The Flattr application
+ * is not installed: things come from the Rest API.
+ * 
+ * @author Philippe Bernard
+ */
+public class ThingLoaderTest {
+
+	private static final long TIMEOUT = 5000;
+
+	private static class RecordingCallback implements ThingLoader.Callback {
+		final List<ThingState> states = new ArrayList<ThingState>();
+		final List<String> failedIds = new ArrayList<String>();
+
+		public void onThingLoaded(ThingState state) {
+			states.add(state);
+		}
+
+		public void onThingLoadFailed(String thingId, Exception error) {
+			failedIds.add(thingId);
+		}
+
+		public void onLastKnownState(ThingState state) {
+			// Not fresh
+		}
+
+		int getResultCount() {
+			return states.size() + failedIds.size();
+		}
+	}
+
+	private final FakeFlattrService service = new FakeFlattrService();
+	private final Looper looper = Looper.getMainLooper();
+	private OpenService openService;
+	private ContentResolver contentResolver;
+
+	@Before
+	public void setUp() throws IOException {
+		looper.queueTasks();
+		openService = service.create();
+		contentResolver = Fixtures.context().getContentResolver();
+	}
+
+	@After
+	public void tearDown() {
+		looper.dropTasks();
+	}
+
+	@Test
+	public void sharesLoadOfSameThing() throws InterruptedException {
+		service.clicks.put("loader-shared", 7);
+		RecordingCallback[] callbacks = new RecordingCallback[3];
+		for (int i = 0; i < callbacks.length; i++) {
+			callbacks[i] = new RecordingCallback();
+			load("loader-shared", callbacks[i]);
+		}
+		looper.advanceClock(ThingLoader.BATCH_WINDOW);
+		for (RecordingCallback callback : callbacks) {
+			awaitResults(callback, 1);
+			assertEquals(1, callback.states.size());
+			assertEquals(7, callback.states.get(0).getClicks());
+		}
+		assertEquals(Collections.singletonList(Collections
+				.singletonList("loader-shared")), service.thingRequests);
+	}
+
+	@Test
+	public void joinsLoadInProgress() throws InterruptedException {
+		service.gate = new CountDownLatch(1);
+		RecordingCallback first = new RecordingCallback();
+		load("loader-in-progress", first);
+		looper.advanceClock(ThingLoader.BATCH_WINDOW);
+		awaitCalls(1);
+
+		RecordingCallback second = new RecordingCallback();
+		load("loader-in-progress", second);
+		looper.advanceClock(ThingLoader.BATCH_WINDOW);
+		service.gate.countDown();
+		awaitResults(first, 1);
+		awaitResults(second, 1);
+		assertEquals(first.states, second.states);
+		assertEquals(1, service.thingRequests.size());
+	}
+
+	@Test
+	public void sharesFailureOfSameThing() throws InterruptedException {
+		service.unknownIds.add("loader-unknown");
+		RecordingCallback first = new RecordingCallback();
+		RecordingCallback second = new RecordingCallback();
+		load("loader-unknown", first);
+		load("loader-unknown", second);
+		looper.advanceClock(ThingLoader.BATCH_WINDOW);
+		awaitResults(first, 1);
+		awaitResults(second, 1);
+		assertEquals(Collections.singletonList("loader-unknown"),
+				first.failedIds);
+		assertEquals(Collections.singletonList("loader-unknown"),
+				second.failedIds);
+		assertEquals(1, service.thingRequests.size());
+	}
+
+	@Test
+	public void loadsWindowInBatches() throws InterruptedException {
+		int thingCount = 2 * ThingLoader.MAX_BATCH_SIZE + 5;
+		List<String> thingIds = new ArrayList<String>();
+		RecordingCallback callback = new RecordingCallback();
+		for (int i = 0; i < thingCount; i++) {
+			thingIds.add("loader-batch-" + i);
+			load("loader-batch-" + i, callback);
+		}
+		// Not sent before the end of the window
+		looper.advanceClock(ThingLoader.BATCH_WINDOW - 1);
+		assertEquals(0, service.calls.size());
+		looper.advanceClock(1);
+		awaitResults(callback, thingCount);
+
+		List<Integer> sizes = new ArrayList<Integer>();
+		List<String> requestedIds = new ArrayList<String>();
+		for (List<String> request : service.thingRequests) {
+			sizes.add(request.size());
+			requestedIds.addAll(request);
+		}
+		Collections.sort(sizes);
+		assertEquals(Arrays.asList(5, ThingLoader.MAX_BATCH_SIZE,
+				ThingLoader.MAX_BATCH_SIZE), sizes);
+		Collections.sort(thingIds);
+		Collections.sort(requestedIds);
+		assertEquals(thingIds, requestedIds);
+		assertEquals(thingCount, callback.states.size());
+	}
+
+	@Test
+	public void startsNewWindowAfterFlush() throws InterruptedException {
+		RecordingCallback callback = new RecordingCallback();
+		load("loader-window-1", callback);
+		looper.advanceClock(ThingLoader.BATCH_WINDOW);
+		load("loader-window-2", callback);
+		looper.advanceClock(ThingLoader.BATCH_WINDOW);
+		awaitResults(callback, 2);
+		assertEquals(2, service.thingRequests.size());
+	}
+
+	@Test
+	public void keepsLoadForRemainingCaller() throws InterruptedException {
+		RecordingCallback leaving = new RecordingCallback();
+		RecordingCallback staying = new RecordingCallback();
+		load("loader-left", leaving);
+		load("loader-left", staying);
+		ThingLoader.cancel("loader-left", leaving);
+		looper.advanceClock(ThingLoader.BATCH_WINDOW);
+		awaitResults(staying, 1);
+		assertEquals(0, leaving.getResultCount());
+	}
+
+	@Test
+	public void cancelsPendingLoadWithLastCaller() {
+		RecordingCallback first = new RecordingCallback();
+		RecordingCallback second = new RecordingCallback();
+		load("loader-cancelled", first);
+		load("loader-cancelled", second);
+		ThingLoader.cancel("loader-cancelled", first);
+		ThingLoader.cancel("loader-cancelled", second);
+		looper.advanceClock(ThingLoader.BATCH_WINDOW);
+		looper.runUntilIdle();
+		assertEquals(0, service.calls.size());
+		assertEquals(0, first.getResultCount() + second.getResultCount());
+	}
+
+	@Test
+	public void cancelsQueuedBatchWithLastCaller()
+			throws InterruptedException {
+		// Keep the loader threads busy with two batches of visible things
+		service.gate = new CountDownLatch(1);
+		RecordingCallback visible = new RecordingCallback();
+		int visibleCount = ThingLoader.LOADER_THREAD_COUNT
+				* ThingLoader.MAX_BATCH_SIZE;
+		for (int i = 0; i < visibleCount; i++) {
+			load("loader-visible-" + i, visible);
+		}
+		// Queued in a third batch, behind them
+		RecordingCallback scrolledAway = new RecordingCallback();
+		ThingLoader.load(contentResolver, openService, "loader-scrolled",
+				LoaderExecutor.PRIORITY_BACKGROUND, scrolledAway);
+		looper.advanceClock(ThingLoader.BATCH_WINDOW);
+		awaitCalls(ThingLoader.LOADER_THREAD_COUNT);
+
+		ThingLoader.cancel("loader-scrolled", scrolledAway);
+		service.gate.countDown();
+		awaitResults(visible, visibleCount);
+		// A later load of the same priority runs after the cancelled batch
+		RecordingCallback later = new RecordingCallback();
+		ThingLoader.load(contentResolver, openService, "loader-later",
+				LoaderExecutor.PRIORITY_BACKGROUND, later);
+		looper.advanceClock(ThingLoader.BATCH_WINDOW);
+		awaitResults(later, 1);
+
+		assertEquals(0, scrolledAway.getResultCount());
+		for (List<String> request : service.thingRequests) {
+			assertFalse(request.contains("loader-scrolled"));
+		}
+	}
+
+	private void load(String thingId, RecordingCallback callback) {
+		ThingLoader.load(contentResolver, openService, thingId,
+				LoaderExecutor.PRIORITY_VISIBLE, callback);
+	}
+
+	/**
+	 * Wait for the loader threads to call the Rest API.
+	 */
+	private void awaitCalls(int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while ((service.calls.size() < count)
+				&& (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(10);
+		}
+		assertEquals(count, service.calls.size());
+	}
+
+	/**
+	 * Run the tasks posted by the loader threads until the callback got the
+	 * given number of results.
+	 */
+	private void awaitResults(RecordingCallback callback, int count)
+			throws InterruptedException {
+		while (callback.getResultCount() < count) {
+			assertTrue("No result", looper.runNextTask(TIMEOUT));
+		}
+		assertEquals(count, callback.getResultCount());
+	}
+}
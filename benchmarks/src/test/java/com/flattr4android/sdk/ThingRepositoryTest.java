@@ -0,0 +1,187 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import android.os.Looper;
+
+/**
+ * Checks that the listeners of a thing share its subscription and its loads.
+ * 
+ * @author Philippe Bernard
+ */
+public class ThingRepositoryTest {
+
+	private static final long TIMEOUT = 5000;
+
+	private static class RecordingListener implements
+			ThingRepository.Listener {
+		final List<ThingState> states = new ArrayList<ThingState>();
+
+		public void onThingChanged(ThingState state) {
+			states.add(state);
+		}
+
+		public void onThingLoadFailed(String thingId, Exception error) {
+			// Not expected
+		}
+	}
+
+	private static final ThingLoader.Callback BUTTON = new ThingLoader.Callback() {
+		public void onThingLoaded(ThingState state) {
+			// Nothing to do
+		}
+
+		public void onThingLoadFailed(String thingId, Exception error) {
+			// Nothing to do
+		}
+
+		public void onLastKnownState(ThingState state) {
+			// Nothing to do
+		}
+	};
+
+	private final FakeFlattrService service = new FakeFlattrService();
+	private final Looper looper = Looper.getMainLooper();
+	private ThingRepository repository;
+
+	@Before
+	public void setUp() throws IOException {
+		looper.queueTasks();
+		FlattrSDK.setOpenService(service.create());
+		repository = new ThingRepository(Fixtures.context()
+				.getContentResolver());
+	}
+
+	@After
+	public void tearDown() {
+		FlattrSDK.setOpenService(null);
+		looper.dropTasks();
+	}
+
+	@Test
+	public void countsEachSubscriberOnce() {
+		cache("repository-counted", 5);
+		RecordingListener first = new RecordingListener();
+		RecordingListener second = new RecordingListener();
+		repository.observe("repository-counted", first);
+		repository.observe("repository-counted", first);
+		assertEquals(1, repository.getSubscriberCount("repository-counted"));
+		repository.observe("repository-counted", second);
+		// A button
+		repository.watch("repository-counted", BUTTON);
+		assertEquals(3, repository.getSubscriberCount("repository-counted"));
+
+		repository.unobserve("repository-counted", first);
+		repository.unobserve("repository-counted", first);
+		assertEquals(2, repository.getSubscriberCount("repository-counted"));
+		repository.unobserve("repository-counted", second);
+		assertEquals(1, repository.getSubscriberCount("repository-counted"));
+		repository.unwatch("repository-counted", BUTTON);
+		assertEquals(0, repository.getSubscriberCount("repository-counted"));
+	}
+
+	@Test
+	public void countsSubscriptionsPerThing() {
+		cache("repository-first", 5);
+		cache("repository-second", 5);
+		RecordingListener listener = new RecordingListener();
+		repository.observe("repository-first", listener);
+		repository.observe("repository-second", listener);
+		repository.unobserve("repository-first", listener);
+		assertEquals(0, repository.getSubscriberCount("repository-first"));
+		assertEquals(1, repository.getSubscriberCount("repository-second"));
+		repository.unobserve("repository-second", listener);
+		assertEquals(0, repository.getSubscriberCount("repository-second"));
+	}
+
+	@Test
+	public void givesFreshStateWithoutLoading() {
+		cache("repository-fresh", 5);
+		RecordingListener listener = new RecordingListener();
+		repository.observe("repository-fresh", listener);
+		looper.runUntilIdle();
+		assertEquals(1, listener.states.size());
+		assertEquals(5, listener.states.get(0).getClicks());
+		looper.advanceClock(ThingLoader.BATCH_WINDOW);
+		assertEquals(0, service.calls.size());
+		repository.unobserve("repository-fresh", listener);
+	}
+
+	@Test
+	public void loadsOnceForAllListeners() throws InterruptedException {
+		service.clicks.put("repository-loaded", 7);
+		RecordingListener first = new RecordingListener();
+		RecordingListener second = new RecordingListener();
+		repository.observe("repository-loaded", first);
+		repository.observe("repository-loaded", second);
+		looper.advanceClock(ThingLoader.BATCH_WINDOW);
+		while (first.states.isEmpty() || second.states.isEmpty()) {
+			assertTrue(looper.runNextTask(TIMEOUT));
+		}
+		assertEquals(7, first.states.get(0).getClicks());
+		assertEquals(7, second.states.get(0).getClicks());
+		assertEquals(1, service.thingRequests.size());
+		repository.unobserve("repository-loaded", first);
+		repository.unobserve("repository-loaded", second);
+	}
+
+	@Test
+	public void cancelsLoadWithLastListener() {
+		RecordingListener first = new RecordingListener();
+		RecordingListener second = new RecordingListener();
+		repository.observe("repository-cancelled", first);
+		repository.observe("repository-cancelled", second);
+		repository.unobserve("repository-cancelled", first);
+		repository.unobserve("repository-cancelled", second);
+		looper.advanceClock(ThingLoader.BATCH_WINDOW);
+		looper.runUntilIdle();
+		assertEquals(0, service.calls.size());
+	}
+
+	@Test
+	public void stopsNotifyingRemovedListener() {
+		cache("repository-removed", 5);
+		RecordingListener removed = new RecordingListener();
+		RecordingListener kept = new RecordingListener();
+		repository.observe("repository-removed", removed);
+		repository.observe("repository-removed", kept);
+		looper.runUntilIdle();
+
+		ThingLoader.publish(new ThingState("repository-removed", 6,
+				ThingStatus.DEFAULT, true));
+		// The state is on its way to the UI thread
+		repository.unobserve("repository-removed", removed);
+		looper.runUntilIdle();
+		assertEquals(1, removed.states.size());
+		assertEquals(2, kept.states.size());
+		repository.unobserve("repository-removed", kept);
+	}
+
+	private static void cache(String thingId, int clicks) {
+		FlattrSDK.getThingCache().put(
+				new ThingState(thingId, clicks, ThingStatus.DEFAULT, true));
+	}
+}
@@ -0,0 +1,108 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.shredzone.flattr4j.exception.FlattrServiceException;
+
+/**
+ * Checks the paging of the user status index refreshes, and their backoff.
+ * 
+ * @author Philippe Bernard
+ */
+public class UserStatusIndexTest {
+
+	private final FakeFlattrService service = new FakeFlattrService();
+	private final UserStatusIndex index = new UserStatusIndex();
+
+	@Before
+	public void setUp() {
+		index.setFlattrService(service.create());
+	}
+
+	@Test
+	public void fetchesEverythingFirst() throws Exception {
+		// Flattred again in another month: listed twice on the first page
+		service.myFlattredIds.add("t1");
+		for (int i = 2; i < UserStatusIndex.PAGE_SIZE; i++) {
+			service.myFlattredIds.add("t" + i);
+		}
+		service.myFlattredIds.add("t1");
+		for (int i = 0; i < UserStatusIndex.PAGE_SIZE; i++) {
+			service.myFlattredIds.add("old" + i);
+		}
+		service.myThingIds.add("mine");
+
+		Set<String> changed = index.refresh();
+		assertEquals(ThingStatus.FLATTRED, index.getStatus("t1"));
+		assertEquals(ThingStatus.FLATTRED, index.getStatus("old"
+				+ (UserStatusIndex.PAGE_SIZE - 1)));
+		assertEquals(ThingStatus.OWNER, index.getStatus("mine"));
+		assertEquals(ThingStatus.DEFAULT, index.getStatus("other"));
+		assertEquals("me", index.getUserId());
+		assertTrue(changed.contains("old0"));
+		assertTrue(changed.contains("mine"));
+	}
+
+	@Test
+	public void stopsAtPreviouslyKnownThings() throws Exception {
+		for (int i = 0; i < 2 * UserStatusIndex.PAGE_SIZE; i++) {
+			service.myFlattredIds.add("t" + i);
+		}
+		index.refresh();
+		service.calls.clear();
+
+		service.myFlattredIds.add(0, "new");
+		Set<String> changed = index.refresh();
+		assertEquals(Collections.singleton("new"), changed);
+		assertEquals(ThingStatus.FLATTRED, index.getStatus("new"));
+		assertEquals(ThingStatus.FLATTRED, index.getStatus("t59"));
+		// The first page contains known things: no need to go further
+		assertEquals(1, Collections.frequency(service.calls, "getMyFlattrs"));
+		assertFalse(service.calls.contains("getMyself"));
+	}
+
+	@Test
+	public void backsOffAfterFailure() throws Exception {
+		long now = System.currentTimeMillis();
+		assertTrue(index.needsRefresh(now));
+
+		service.failure = new FlattrServiceException("server_error", "Down");
+		try {
+			index.refresh();
+		} catch (FlattrServiceException e) {
+			// Expected
+		}
+		assertNull(index.getStatus("t1"));
+		// Not for every lookup
+		assertFalse(index.needsRefresh(System.currentTimeMillis()));
+		assertTrue(index.needsRefresh(System.currentTimeMillis()
+				+ UserStatusIndex.REFRESH_INTERVAL));
+
+		service.failure = null;
+		index.refresh();
+		assertEquals(ThingStatus.DEFAULT, index.getStatus("t1"));
+		assertFalse(index.needsRefresh(System.currentTimeMillis()));
+	}
+}
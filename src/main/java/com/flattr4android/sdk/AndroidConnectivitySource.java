@@ -0,0 +1,95 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+
+/**
+ * Connectivity as reported by the <code>ConnectivityManager</code>. Mobile
+ * networks are considered metered, and GPRS and EDGE are considered slow.
+ * <p>
+ * Reading the connectivity requires the <code>ACCESS_NETWORK_STATE</code>
+ * permission, which is optional: without it, or when the connectivity is
+ * unknown, the network is assumed to be fast and free, and things are
+ * loaded as soon as they are needed.
+ * 
+ * @author Philippe Bernard
+ */
+class AndroidConnectivitySource implements ConnectivitySource {
+
+	// Null when the connectivity cannot be read
+	private volatile ConnectivityManager connectivityManager;
+
+	AndroidConnectivitySource(Context context) {
+		if (context.checkCallingOrSelfPermission(
+				Manifest.permission.ACCESS_NETWORK_STATE) == PackageManager.PERMISSION_GRANTED) {
+			connectivityManager = (ConnectivityManager) context
+					.getSystemService(Context.CONNECTIVITY_SERVICE);
+		} else {
+			connectivityManager = null;
+		}
+	}
+
+	public boolean isConnected() {
+		NetworkInfo info = getActiveNetworkInfo();
+		if (connectivityManager == null) {
+			// Unknown
+			return true;
+		}
+		return (info != null) && info.isConnected();
+	}
+
+	public boolean isMetered() {
+		NetworkInfo info = getActiveNetworkInfo();
+		return (info != null)
+				&& (info.getType() == ConnectivityManager.TYPE_MOBILE);
+	}
+
+	public boolean isSlow() {
+		NetworkInfo info = getActiveNetworkInfo();
+		if ((info == null)
+				|| (info.getType() != ConnectivityManager.TYPE_MOBILE)) {
+			return false;
+		}
+		int subtype = info.getSubtype();
+		return (subtype == TelephonyManager.NETWORK_TYPE_GPRS)
+				|| (subtype == TelephonyManager.NETWORK_TYPE_EDGE);
+	}
+
+	/**
+	 * @return The active network, or <code>null</code> if there is none or if
+	 *         it is unknown.
+	 */
+	private NetworkInfo getActiveNetworkInfo() {
+		ConnectivityManager manager = connectivityManager;
+		if (manager == null) {
+			return null;
+		}
+		try {
+			return manager.getActiveNetworkInfo();
+		} catch (SecurityException e) {
+			// The permission is enforced differently: stop trying
+			Log.d(FlattrSDK.LOG_TAG, "Cannot read the network state", e);
+			connectivityManager = null;
+			return null;
+		}
+	}
+}
@@ -0,0 +1,229 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Paint.FontMetrics;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.text.TextPaint;
+
+/**
+ * Artwork of a button style at a given screen density: drawables, sizes and
+ * click text metrics. Instances are pooled and shared read-only by all
+ * buttons, so the resources are decoded once per process.
+ * 
+ * In composite rendering mode (see
+ * {@link FlattrSDK#setCompositeRendering(boolean)}), the parts of the button
+ * are drawn once per status into a bitmap, and a frame only draws this bitmap
+ * and the click count.
+ * 
+ * @author Philippe Bernard
+ */
+class ButtonArtwork {
+
+	private static final Map<String, ButtonArtwork> pool = new HashMap<String, ButtonArtwork>();
+
+	private final int width, height;
+	// Parts which do not depend on the thing status
+	private final Drawable[] fixedParts;
+	// Part showing the thing status, indexed by ThingStatus ordinal
+	private final Drawable[] statusParts;
+	// Whole button, indexed by ThingStatus ordinal, created on first use
+	private final Bitmap[] composites = new Bitmap[ThingStatus.values().length];
+	private final TextPaint clickPaint;
+	private final float clickX, clickY;
+
+	/**
+	 * Return the artwork of a style, for the density of the given resources.
+	 */
+	static synchronized ButtonArtwork get(Resources res, String style) {
+		String key = style + '@' + res.getDisplayMetrics().density;
+		ButtonArtwork artwork = pool.get(key);
+		if (artwork == null) {
+			artwork = new ButtonArtwork(res, style);
+			pool.put(key, artwork);
+		}
+		return artwork;
+	}
+
+	/**
+	 * Forget pooled artworks. Artworks still used by buttons are garbage
+	 * collected once these buttons are gone.
+	 */
+	static synchronized void release() {
+		pool.clear();
+	}
+
+	private ButtonArtwork(Resources res, String style) {
+		Bitmap tmp;
+		FontMetrics metrics;
+
+		clickPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+		clickPaint.setColor(FlattrButton.CLICK_TEXT_COLOR);
+		clickPaint.setTextAlign(Paint.Align.CENTER);
+
+		if (style.equals(FlattrButton.BUTTON_STYLE_VERTICAL)) {
+			Drawable top = res.getDrawable(R.drawable.button_vertical_top);
+			tmp = ((BitmapDrawable) top).getBitmap();
+			int topWidth = tmp.getWidth();
+			int topHeight = tmp.getHeight();
+
+			Drawable middle = res
+					.getDrawable(R.drawable.button_vertical_middle);
+			tmp = ((BitmapDrawable) middle).getBitmap();
+			int middleWidth = tmp.getWidth();
+			int middleHeight = tmp.getHeight();
+
+			statusParts = loadStatusParts(res,
+					R.drawable.button_vertical_bottom_flattr,
+					R.drawable.button_vertical_bottom_flattred,
+					R.drawable.button_vertical_bottom_mything,
+					R.drawable.button_vertical_bottom_inactive);
+			tmp = ((BitmapDrawable) statusParts[ThingStatus.DEFAULT.ordinal()])
+					.getBitmap();
+			int bottomWidth = tmp.getWidth();
+			int bottomHeight = tmp.getHeight();
+
+			top.setBounds(0, 0, topWidth, topHeight);
+			middle.setBounds(0, topHeight, middleWidth, topHeight
+					+ middleHeight);
+			for (Drawable bottom : statusParts) {
+				bottom.setBounds(0, topHeight + middleHeight, bottomWidth,
+						topHeight + middleHeight + bottomHeight);
+			}
+			fixedParts = new Drawable[] { top, middle };
+
+			width = topWidth;
+			height = topHeight + middleHeight + bottomHeight;
+
+			clickPaint.setTextSize(topHeight / 3f);
+			metrics = clickPaint.getFontMetrics();
+			clickX = topWidth / 2f;
+			clickY = (topHeight - (metrics.ascent + metrics.descent)) / 2f;
+		} else {
+			if (style.equals(FlattrButton.BUTTON_STYLE_HORIZONTAL)) {
+				statusParts = loadStatusParts(res,
+						R.drawable.button_horizontal_left_flattr,
+						R.drawable.button_horizontal_left_flattred,
+						R.drawable.button_horizontal_left_mything,
+						R.drawable.button_horizontal_left_inactive);
+				fixedParts = new Drawable[] { res
+						.getDrawable(R.drawable.button_horizontal_right) };
+			} else {
+				statusParts = loadStatusParts(res,
+						R.drawable.button_mini_left_flattr,
+						R.drawable.button_mini_left_flattred,
+						R.drawable.button_mini_left_mything,
+						R.drawable.button_mini_left_inactive);
+				fixedParts = new Drawable[] { res
+						.getDrawable(R.drawable.button_mini_right) };
+			}
+			tmp = ((BitmapDrawable) statusParts[ThingStatus.DEFAULT.ordinal()])
+					.getBitmap();
+			int leftWidth = tmp.getWidth();
+			int leftHeight = tmp.getHeight();
+
+			Drawable right = fixedParts[0];
+			((BitmapDrawable) right).setAntiAlias(true);
+			tmp = ((BitmapDrawable) right).getBitmap();
+			int rightWidth = tmp.getWidth();
+			int rightHeight = tmp.getHeight();
+
+			for (Drawable left : statusParts) {
+				left.setBounds(0, 0, leftWidth, leftHeight);
+			}
+			right.setBounds(leftWidth, 0, leftWidth + rightWidth,
+					rightHeight);
+
+			width = leftWidth + rightWidth;
+			height = leftHeight;
+
+			clickPaint.setTextSize(rightHeight / 2f);
+			metrics = clickPaint.getFontMetrics();
+			clickX = leftWidth + (rightWidth / 2f);
+			// In the formula, the 0.92 factor is there to take the drop shadow
+			// (at the bottom of the button) into account
+			clickY = ((rightHeight * 0.92f) - (metrics.ascent + metrics.descent)) / 2f;
+		}
+	}
+
+	/**
+	 * Load the drawables showing the thing status, in the order of the
+	 * <code>ThingStatus</code> constants.
+	 */
+	private static Drawable[] loadStatusParts(Resources res, int flattrId,
+			int flattredId, int myThingId, int inactiveId) {
+		Drawable[] parts = new Drawable[ThingStatus.values().length];
+		parts[ThingStatus.DEFAULT.ordinal()] = res.getDrawable(flattrId);
+		parts[ThingStatus.FLATTRED.ordinal()] = res.getDrawable(flattredId);
+		parts[ThingStatus.OWNER.ordinal()] = res.getDrawable(myThingId);
+		parts[ThingStatus.INACTIVE.ordinal()] = res.getDrawable(inactiveId);
+		for (Drawable part : parts) {
+			((BitmapDrawable) part).setAntiAlias(true);
+		}
+		return parts;
+	}
+
+	int getWidth() {
+		return width;
+	}
+
+	int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Draw the button, without its click count.
+	 */
+	void draw(Canvas canvas, ThingStatus status) {
+		if (FlattrSDK.isCompositeRendering()) {
+			canvas.drawBitmap(getComposite(status), 0, 0, null);
+		} else {
+			drawParts(canvas, status);
+		}
+	}
+
+	private void drawParts(Canvas canvas, ThingStatus status) {
+		for (Drawable part : fixedParts) {
+			part.draw(canvas);
+		}
+		statusParts[status.ordinal()].draw(canvas);
+	}
+
+	/**
+	 * Artworks are only drawn on the UI thread: no need to synchronize.
+	 */
+	private Bitmap getComposite(ThingStatus status) {
+		Bitmap composite = composites[status.ordinal()];
+		if (composite == null) {
+			composite = Bitmap.createBitmap(width, height,
+					Bitmap.Config.ARGB_8888);
+			drawParts(new Canvas(composite), status);
+			composites[status.ordinal()] = composite;
+		}
+		return composite;
+	}
+
+	void drawClicks(Canvas canvas, String text) {
+		canvas.drawText(text, clickX, clickY, clickPaint);
+	}
+}
@@ -0,0 +1,166 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+/**
+ * What a button displays, as an immutable snapshot. A button publishes a new
+ * snapshot for each change, so the clicks, the status and the error of its
+ * thing are always read together, without locking.
+ * 
+ * @author Philippe Bernard
+ */
+final class ButtonState {
+
+	static final ButtonState UNBOUND = new ButtonState(null, 0, null, null,
+			false, null, false);
+
+	private final String thingId;
+	// Binding generation, see FlattrButton#bind(String)
+	private final int generation;
+	// Last known state of the thing, null if none
+	private final ThingState thing;
+	// Formatted clicks of the thing, computed when the count changes
+	private final String clicksText;
+	private final boolean stale;
+	private final Exception error;
+	// Whether the state or the error is displayed, rather than the loading
+	// mark (it is not during the first half of the "new state" animation)
+	private final boolean displayed;
+
+	private ButtonState(String thingId, int generation, ThingState thing,
+			String clicksText, boolean stale, Exception error,
+			boolean displayed) {
+		this.thingId = thingId;
+		this.generation = generation;
+		this.thing = thing;
+		this.clicksText = clicksText;
+		this.stale = stale;
+		this.error = error;
+		this.displayed = displayed;
+	}
+
+	/**
+	 * @return A state of a new binding, the thing being unknown.
+	 */
+	ButtonState bind(String newThingId) {
+		return new ButtonState(newThingId, generation + 1, null, null, false,
+				null, false);
+	}
+
+	/**
+	 * @param stale
+	 *            <code>true</code> if the state is displayed while being
+	 *            refreshed.
+	 */
+	ButtonState withThing(ThingState newThing, boolean newStale,
+			boolean newDisplayed) {
+		String text = clicksText;
+		if ((thing == null) || (text == null)
+				|| (thing.getClicks() != newThing.getClicks())) {
+			text = Integer.toString(newThing.getClicks());
+		}
+		return new ButtonState(thingId, generation, newThing, text, newStale,
+				null, newDisplayed);
+	}
+
+	/**
+	 * @return A state waiting for a new load. A stale thing is still
+	 *         displayed until it is refreshed.
+	 */
+	ButtonState loading() {
+		if (stale) {
+			return new ButtonState(thingId, generation, thing, clicksText,
+					true, null, displayed);
+		}
+		return new ButtonState(thingId, generation, null, null, false, null,
+				displayed);
+	}
+
+	/**
+	 * @return A state with the error of a load. A previously loaded thing
+	 *         (whose refresh failed) is kept.
+	 */
+	ButtonState withError(Exception newError, boolean newDisplayed) {
+		return new ButtonState(thingId, generation, thing, clicksText, false,
+				newError, newDisplayed);
+	}
+
+	/**
+	 * @return A state whose thing (whose refresh failed) is kept displayed
+	 *         while it is loaded again.
+	 */
+	ButtonState retrying() {
+		return new ButtonState(thingId, generation, thing, clicksText,
+				thing != null, error, displayed);
+	}
+
+	ButtonState displayed() {
+		return displayed ? this : new ButtonState(thingId, generation, thing,
+				clicksText, stale, error, true);
+	}
+
+	String getThingId() {
+		return thingId;
+	}
+
+	int getGeneration() {
+		return generation;
+	}
+
+	ThingState getThing() {
+		return thing;
+	}
+
+	boolean isSet() {
+		return thing != null;
+	}
+
+	String getClicksText() {
+		return clicksText;
+	}
+
+	boolean isStale() {
+		return stale;
+	}
+
+	Exception getError() {
+		return error;
+	}
+
+	boolean isDisplayed() {
+		return displayed;
+	}
+
+	/**
+	 * @return The status to display: the real status is only known to the
+	 *         user credentials.
+	 */
+	ThingStatus getDisplayedStatus() {
+		if (displayed && (thing != null) && thing.isGotAsUser()) {
+			return thing.getStatus();
+		}
+		return ThingStatus.DEFAULT;
+	}
+
+	/**
+	 * @return <code>true</code> if the given thing state is already displayed.
+	 */
+	boolean showsSameThing(ThingState other) {
+		return displayed && (thing != null)
+				&& (thing.getClicks() == other.getClicks())
+				&& (thing.getStatus() == other.getStatus())
+				&& (thing.isGotAsUser() == other.isGotAsUser());
+	}
+}
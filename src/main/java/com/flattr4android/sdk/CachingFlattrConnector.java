@@ -0,0 +1,140 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.AbstractHttpClient;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.shredzone.flattr4j.FlattrService;
+import org.shredzone.flattr4j.connector.Connection;
+import org.shredzone.flattr4j.connector.RequestType;
+import org.shredzone.flattr4j.connector.impl.FlattrConnection;
+import org.shredzone.flattr4j.connector.impl.FlattrConnector;
+import org.shredzone.flattr4j.connector.impl.FlattrHttpClient;
+import org.shredzone.flattr4j.exception.FlattrException;
+import org.shredzone.flattr4j.impl.FlattrServiceImpl;
+import org.shredzone.flattr4j.oauth.AccessToken;
+
+/**
+ * flattr4j connector saving bandwidth: all connections share one
+ * <code>HttpClient</code>, so the HTTP connections are kept alive between
+ * calls, and the responses are revalidated with <code>ETag</code> and
+ * <code>If-Modified-Since</code> rather than fetched again (see
+ * {@link HttpResponseCache}). Responses are still gzip compressed, as
+ * negotiated by flattr4j.
+ * 
+ * Create a REST client with it and give it to
+ * {@link FlattrButton#setFlattrRestClient(FlattrService)}:
+ * 
+ * <pre>
+ * button.setFlattrRestClient(CachingFlattrConnector
+ * 		.createFlattrService(accessToken));
+ * </pre>
+ * 
+ * @author Philippe Bernard
+ */
+public class CachingFlattrConnector extends FlattrConnector {
+
+	static final int TIMEOUT = 20 * 1000;
+
+	private static AbstractHttpClient sharedClient;
+	private static final HttpResponseCache responseCache = new HttpResponseCache(
+			HttpResponseCache.DEFAULT_MAX_ENTRIES);
+
+	/**
+	 * @return A client of the public part of the Rest API.
+	 */
+	public static FlattrService createFlattrService() {
+		return new FlattrServiceImpl(new CachingFlattrConnector());
+	}
+
+	/**
+	 * @return A client acting on behalf of the user who granted the token.
+	 */
+	public static FlattrService createFlattrService(AccessToken accessToken) {
+		CachingFlattrConnector connector = new CachingFlattrConnector();
+		connector.setAccessToken(accessToken);
+		return new FlattrServiceImpl(connector);
+	}
+
+	/**
+	 * Forget the cached responses.
+	 */
+	public static void clearCache() {
+		responseCache.clear();
+	}
+
+	@Override
+	public Connection create(RequestType type) throws FlattrException {
+		Connection connection = new SharedClientConnection(type);
+		connection.url(getBaseUrl());
+		if (getAccessToken() != null) {
+			connection.token(getAccessToken());
+		}
+		return connection;
+	}
+
+	private static synchronized AbstractHttpClient getSharedClient() {
+		if (sharedClient == null) {
+			HttpParams params = new BasicHttpParams();
+			HttpConnectionParams.setConnectionTimeout(params, TIMEOUT);
+			HttpConnectionParams.setSoTimeout(params, TIMEOUT);
+
+			SSLSocketFactory sslSocketFactory = FlattrHttpClient
+					.getSocketFactory();
+			if (sslSocketFactory == null) {
+				sslSocketFactory = SSLSocketFactory.getSocketFactory();
+			}
+			SchemeRegistry registry = new SchemeRegistry();
+			registry.register(new Scheme("http", PlainSocketFactory
+					.getSocketFactory(), 80));
+			registry.register(new Scheme("https", sslSocketFactory, 443));
+
+			// Used concurrently by the loader threads
+			sharedClient = new DefaultHttpClient(
+					new ThreadSafeClientConnManager(params, registry), params);
+			sharedClient.addRequestInterceptor(responseCache);
+			sharedClient.addResponseInterceptor(responseCache);
+		}
+		return sharedClient;
+	}
+
+	/**
+	 * Connection using the shared client, and leaving it open once done.
+	 */
+	private static class SharedClientConnection extends FlattrConnection {
+
+		SharedClientConnection(RequestType type) {
+			super(type);
+		}
+
+		@Override
+		protected AbstractHttpClient createHttpClient() {
+			return getSharedClient();
+		}
+
+		@Override
+		protected void disposeHttpClient(AbstractHttpClient client) {
+			// Keep the connections alive for the next calls
+		}
+	}
+}
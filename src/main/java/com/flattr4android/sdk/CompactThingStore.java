@@ -0,0 +1,313 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+/**
+ * Memory-efficient store of thing states, for applications which show
+ * thousands of things (podcasts, feed items...). Rather than one object
+ * graph per thing, states are kept in parallel primitive arrays of an open
+ * addressing hash table with linear probing: a 32 characters hexadecimal
+ * thing Id is packed in two <code>long</code>, the clicks and the load time
+ * in two <code>int</code>, the status and the flags in a <code>byte</code>.
+ * This is about 25 bytes per slot, or less than 35 bytes per thing when the
+ * store is full.
+ * <p>
+ * Ids of another form are not accepted (see {@link #accepts(String)}). When
+ * the store is full, an entry not looked up recently is evicted (clock
+ * algorithm, an approximation of LRU).
+ * <p>
+ * This class is not thread-safe: its owner must synchronize the calls.
+ * 
+ * @author Philippe Bernard
+ */
+final class CompactThingStore {
+
+	static final int ID_LENGTH = 32;
+
+	private static final float LOAD_FACTOR = 0.75f;
+	private static final int MIN_TABLE_SIZE = 16;
+
+	private static final int STATUS_MASK = 0x03;
+	private static final int GOT_AS_USER = 0x04;
+	// Looked up since the clock hand last passed
+	private static final int REFERENCED = 0x08;
+	private static final int OCCUPIED = 0x10;
+
+	private static final ThingStatus[] STATUSES = ThingStatus.values();
+
+	private final int maxSize;
+	private final int maxTableSize;
+	// Load times are stored in seconds, relative to this time
+	private final long baseTime;
+
+	private long[] idHighs;
+	private long[] idLows;
+	private int[] clicks;
+	private int[] loadedAts;
+	private byte[] flags;
+	private int size = 0;
+	private int clockHand = 0;
+
+	CompactThingStore(int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Invalid store size "
+					+ maxSize);
+		}
+		this.maxSize = maxSize;
+		this.maxTableSize = tableSize(maxSize);
+		this.baseTime = System.currentTimeMillis();
+		allocate(Math.min(MIN_TABLE_SIZE, maxTableSize));
+	}
+
+	/**
+	 * @return <code>true</code> if the thing Id can be packed, ie. if it is
+	 *         made of 32 lowercase hexadecimal characters.
+	 */
+	static boolean accepts(String thingId) {
+		if ((thingId == null) || (thingId.length() != ID_LENGTH)) {
+			return false;
+		}
+		for (int i = 0; i < ID_LENGTH; i++) {
+			if (hexValue(thingId.charAt(i)) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Store the state of a thing, replacing its previous state.
+	 * 
+	 * @return <code>false</code> if the thing Id is not accepted.
+	 */
+	boolean put(ThingState state) {
+		return put(state.getThingId(), state.getClicks(), state.getStatus(),
+				state.isGotAsUser(), state.getLoadedAt());
+	}
+
+	/**
+	 * Store the state of a thing, without creating any object.
+	 * 
+	 * @return <code>false</code> if the thing Id is not accepted.
+	 */
+	boolean put(String thingId, int thingClicks, ThingStatus status,
+			boolean gotAsUser, long loadedAt) {
+		if (!accepts(thingId)) {
+			return false;
+		}
+		long high = pack(thingId, 0);
+		long low = pack(thingId, ID_LENGTH / 2);
+		int slot = find(high, low);
+		if (slot < 0) {
+			if (size >= maxSize) {
+				evict();
+			} else if ((size + 1 > idHighs.length * LOAD_FACTOR)
+					&& (idHighs.length < maxTableSize)) {
+				grow();
+			}
+			slot = insertionSlot(high, low);
+			idHighs[slot] = high;
+			idLows[slot] = low;
+			size++;
+		}
+		clicks[slot] = thingClicks;
+		loadedAts[slot] = (int) ((loadedAt - baseTime) / 1000);
+		flags[slot] = (byte) (OCCUPIED | status.ordinal()
+				| (gotAsUser ? GOT_AS_USER : 0));
+		return true;
+	}
+
+	/**
+	 * @return The state of the thing, or <code>null</code> if it is not
+	 *         stored. The load time is rounded to the second.
+	 */
+	ThingState get(String thingId) {
+		int slot = lookup(thingId);
+		if (slot < 0) {
+			return null;
+		}
+		int slotFlags = flags[slot];
+		return new ThingState(thingId, clicks[slot],
+				STATUSES[slotFlags & STATUS_MASK],
+				(slotFlags & GOT_AS_USER) != 0, baseTime + loadedAts[slot]
+						* 1000L);
+	}
+
+	void remove(String thingId) {
+		if (!accepts(thingId)) {
+			return;
+		}
+		int slot = find(pack(thingId, 0), pack(thingId, ID_LENGTH / 2));
+		if (slot >= 0) {
+			removeSlot(slot);
+		}
+	}
+
+	void clear() {
+		allocate(Math.min(MIN_TABLE_SIZE, maxTableSize));
+		size = 0;
+		clockHand = 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	private static int tableSize(int entries) {
+		return Math.max((int) Math.ceil(entries / LOAD_FACTOR) + 1,
+				MIN_TABLE_SIZE);
+	}
+
+	private void allocate(int tableSize) {
+		idHighs = new long[tableSize];
+		idLows = new long[tableSize];
+		clicks = new int[tableSize];
+		loadedAts = new int[tableSize];
+		flags = new byte[tableSize];
+	}
+
+	private void grow() {
+		long[] oldHighs = idHighs;
+		long[] oldLows = idLows;
+		int[] oldClicks = clicks;
+		int[] oldLoadedAts = loadedAts;
+		byte[] oldFlags = flags;
+		allocate((int) Math.min((long) oldHighs.length * 2, maxTableSize));
+		for (int i = 0; i < oldHighs.length; i++) {
+			if ((oldFlags[i] & OCCUPIED) != 0) {
+				int slot = insertionSlot(oldHighs[i], oldLows[i]);
+				idHighs[slot] = oldHighs[i];
+				idLows[slot] = oldLows[i];
+				clicks[slot] = oldClicks[i];
+				loadedAts[slot] = oldLoadedAts[i];
+				flags[slot] = oldFlags[i];
+			}
+		}
+		clockHand = 0;
+	}
+
+	/**
+	 * Remove the first entry not referenced since the clock hand last passed
+	 * on it, clearing the reference bits on the way.
+	 */
+	private void evict() {
+		while (true) {
+			int slot = clockHand;
+			clockHand = (clockHand + 1 == flags.length) ? 0 : clockHand + 1;
+			int slotFlags = flags[slot];
+			if ((slotFlags & OCCUPIED) == 0) {
+				continue;
+			}
+			if ((slotFlags & REFERENCED) != 0) {
+				flags[slot] = (byte) (slotFlags & ~REFERENCED);
+			} else {
+				removeSlot(slot);
+				return;
+			}
+		}
+	}
+
+	private int lookup(String thingId) {
+		if (!accepts(thingId)) {
+			return -1;
+		}
+		int slot = find(pack(thingId, 0), pack(thingId, ID_LENGTH / 2));
+		if (slot >= 0) {
+			flags[slot] |= REFERENCED;
+		}
+		return slot;
+	}
+
+	/**
+	 * @return The slot of the thing, or <code>-1</code>.
+	 */
+	private int find(long high, long low) {
+		int slot = home(high, low, flags.length);
+		while ((flags[slot] & OCCUPIED) != 0) {
+			if ((idHighs[slot] == high) && (idLows[slot] == low)) {
+				return slot;
+			}
+			slot = (slot + 1 == flags.length) ? 0 : slot + 1;
+		}
+		return -1;
+	}
+
+	private int insertionSlot(long high, long low) {
+		int slot = home(high, low, flags.length);
+		while ((flags[slot] & OCCUPIED) != 0) {
+			slot = (slot + 1 == flags.length) ? 0 : slot + 1;
+		}
+		return slot;
+	}
+
+	/**
+	 * Backward shift deletion: the entries following the removed one in its
+	 * probe sequence are moved back, so lookups never need tombstones.
+	 */
+	private void removeSlot(int slot) {
+		int hole = slot;
+		int next = hole;
+		while (true) {
+			next = (next + 1 == flags.length) ? 0 : next + 1;
+			if ((flags[next] & OCCUPIED) == 0) {
+				break;
+			}
+			int home = home(idHighs[next], idLows[next], flags.length);
+			// Move the entry if the hole is between its home and its slot
+			boolean movable = (hole <= next) ? ((home <= hole) || (home > next))
+					: ((home <= hole) && (home > next));
+			if (movable) {
+				idHighs[hole] = idHighs[next];
+				idLows[hole] = idLows[next];
+				clicks[hole] = clicks[next];
+				loadedAts[hole] = loadedAts[next];
+				flags[hole] = flags[next];
+				hole = next;
+			}
+		}
+		flags[hole] = 0;
+		size--;
+	}
+
+	/**
+	 * Map an Id to a slot. The table size is not a power of two, so the hash
+	 * is scaled to the table size rather than masked.
+	 */
+	private static int home(long high, long low, int tableSize) {
+		long hash = high * 0x9E3779B97F4A7C15L ^ low;
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		return (int) (((hash & 0xFFFFFFFFL) * tableSize) >>> 32);
+	}
+
+	private static long pack(String thingId, int offset) {
+		long value = 0;
+		for (int i = offset; i < offset + ID_LENGTH / 2; i++) {
+			value = (value << 4) | hexValue(thingId.charAt(i));
+		}
+		return value;
+	}
+
+	private static int hexValue(char c) {
+		if ((c >= '0') && (c <= '9')) {
+			return c - '0';
+		}
+		if ((c >= 'a') && (c <= 'f')) {
+			return c - 'a' + 10;
+		}
+		return -1;
+	}
+}
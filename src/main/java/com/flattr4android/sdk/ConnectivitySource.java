@@ -0,0 +1,47 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+/**
+ * State of the network connection, as seen by the SDK when it decides when
+ * and how to load things. The default source queries the Android
+ * <code>ConnectivityManager</code>; set another one with
+ * {@link FlattrSDK#setConnectivitySource(ConnectivitySource)}, for example
+ * to simulate network conditions.
+ * <p>
+ * Methods are called from the UI thread and from the SDK loader threads.
+ * 
+ * @author Philippe Bernard
+ */
+public interface ConnectivitySource {
+
+	/**
+	 * @return <code>true</code> if a network connection is available.
+	 */
+	boolean isConnected();
+
+	/**
+	 * @return <code>true</code> if the user may pay for the data, and if the
+	 *         radio drains the battery when it wakes up (typically a mobile
+	 *         network).
+	 */
+	boolean isMetered();
+
+	/**
+	 * @return <code>true</code> if a request takes seconds rather than
+	 *         milliseconds (typically GPRS or EDGE).
+	 */
+	boolean isSlow();
+}
@@ -0,0 +1,123 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import java.util.Random;
+
+/**
+ * Health of a source of things (the Flattr application, the Rest API...):
+ * a circuit breaker which opens after a few consecutive failures, then lets
+ * a single probe request through once its backoff delay is elapsed. The
+ * delay grows exponentially, with some jitter, as long as the probes fail.
+ * 
+ * Times are given by the caller, so the policy does not depend on a clock.
+ * 
+ * @author Philippe Bernard
+ */
+class FailurePolicy {
+
+	static final int DEFAULT_FAILURE_THRESHOLD = 3;
+	static final long DEFAULT_INITIAL_DELAY = 1000;
+	static final long DEFAULT_MAX_DELAY = 5 * 60 * 1000;
+
+	private enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final int failureThreshold;
+	private final long initialDelay;
+	private final long maxDelay;
+	private final Random random = new Random();
+
+	private State state = State.CLOSED;
+	// Consecutive failures
+	private int failures = 0;
+	// Number of times the circuit opened in a row
+	private int openings = 0;
+	private long openUntil;
+
+	FailurePolicy() {
+		this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_INITIAL_DELAY,
+				DEFAULT_MAX_DELAY);
+	}
+
+	FailurePolicy(int failureThreshold, long initialDelay, long maxDelay) {
+		this.failureThreshold = failureThreshold;
+		this.initialDelay = initialDelay;
+		this.maxDelay = maxDelay;
+	}
+
+	/**
+	 * @return <code>true</code> if a request can be sent to the source now.
+	 *         The caller must then report its outcome with
+	 *         {@link #onSuccess()} or {@link #onFailure(long)}.
+	 */
+	synchronized boolean allowRequest(long now) {
+		switch (state) {
+		case CLOSED:
+			return true;
+		case OPEN:
+			if (now < openUntil) {
+				return false;
+			}
+			// Probe the source, the other requests still fail fast
+			state = State.HALF_OPEN;
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	synchronized void onSuccess() {
+		state = State.CLOSED;
+		failures = 0;
+		openings = 0;
+	}
+
+	synchronized void onFailure(long now) {
+		failures++;
+		if ((state == State.HALF_OPEN) || (failures >= failureThreshold)) {
+			state = State.OPEN;
+			openUntil = now + getBackoffDelay(openings++);
+		}
+	}
+
+	/**
+	 * @return The time to wait before the source accepts requests again, 0 if
+	 *         it accepts them now.
+	 */
+	synchronized long getRemainingOpenTime(long now) {
+		return (state == State.OPEN) ? Math.max(0, openUntil - now) : 0;
+	}
+
+	/**
+	 * Jittered exponential backoff: between half and all of
+	 * <code>initialDelay * 2^attempt</code>, capped to
+	 * <code>maxDelay</code>.
+	 */
+	long getBackoffDelay(int attempt) {
+		return getBackoffDelay(initialDelay, maxDelay, attempt, random);
+	}
+
+	static long getBackoffDelay(long initialDelay, long maxDelay,
+			int attempt, Random random) {
+		long delay = maxDelay;
+		if ((attempt < 30) && ((initialDelay << attempt) < maxDelay)) {
+			delay = initialDelay << attempt;
+		}
+		// Jitter, so the clients do not all come back at the same time
+		return delay / 2 + (long) (random.nextDouble() * delay / 2);
+	}
+}
@@ -0,0 +1,382 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.shredzone.flattr4j.FlattrService;
+import org.shredzone.flattr4j.exception.FlattrServiceException;
+import org.shredzone.flattr4j.exception.ForbiddenException;
+import org.shredzone.flattr4j.exception.NotFoundException;
+import org.shredzone.flattr4j.exception.RateLimitExceededException;
+import org.shredzone.flattr4j.model.Thing;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Durable queue of flattr actions. An action is displayed by the buttons at
+ * once, and recorded on disk in the background. It is sent later, in batches, with the
+ * <code>FlattrService</code> set by the application, and retried with an
+ * exponential backoff until the network is back.
+ * 
+ * Get the queue with {@link FlattrSDK#getActionQueue(Context)}. The
+ * application needs the <code>ACCESS_NETWORK_STATE</code> permission for the
+ * queue to be flushed as soon as the connectivity returns.
+ * 
+ * @author Philippe Bernard
+ */
+public class FlattrActionQueue {
+
+	/**
+	 * Maximum number of actions sent in a row, before the other tasks get a
+	 * chance to run.
+	 */
+	static final int BATCH_SIZE = 10;
+
+	static final long INITIAL_RETRY_DELAY = 5 * 1000;
+	static final long MAX_RETRY_DELAY = 30 * 60 * 1000;
+
+	private static final int MAGIC = 0x46514151;
+	private static final int VERSION = 1;
+
+	private final Context context;
+	private final File file;
+	// Things to flattr, in the order of the actions
+	private final List<String> thingIds = new ArrayList<String>();
+	private FlattrService flattrService;
+
+	private final LoaderExecutor executor = new LoaderExecutor(1);
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private final Random random = new Random();
+	private boolean flushing = false;
+	private boolean retryScheduled = false;
+	private int failures = 0;
+	private boolean receiverRegistered = false;
+	private boolean writeScheduled = false;
+	// Held while writing, so the writes of successive snapshots of the
+	// actions do not overlap
+	private final Object fileLock = new Object();
+
+	private final Runnable flushBatch = new Runnable() {
+		public void run() {
+			flushBatch();
+		}
+	};
+
+	private final Runnable writeActions = new Runnable() {
+		public void run() {
+			synchronized (fileLock) {
+				List<String> ids;
+				synchronized (FlattrActionQueue.this) {
+					writeScheduled = false;
+					ids = new ArrayList<String>(thingIds);
+				}
+				write(ids);
+			}
+		}
+	};
+
+	private final Runnable retry = new Runnable() {
+		public void run() {
+			synchronized (FlattrActionQueue.this) {
+				retryScheduled = false;
+				flush();
+			}
+		}
+	};
+
+	private final BroadcastReceiver connectivityReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			if (intent.getBooleanExtra(
+					ConnectivityManager.EXTRA_NO_CONNECTIVITY, false)) {
+				return;
+			}
+			synchronized (FlattrActionQueue.this) {
+				// No need to wait for the end of the backoff
+				failures = 0;
+				if (retryScheduled) {
+					handler.removeCallbacks(retry);
+					retryScheduled = false;
+				}
+				flush();
+			}
+		}
+	};
+
+	FlattrActionQueue(Context context, File file) {
+		this.context = context;
+		this.file = file;
+		read();
+	}
+
+	/**
+	 * Set the REST client used to send the actions, created with the user
+	 * credentials. The pending actions are sent right away.
+	 */
+	public synchronized void setFlattrService(FlattrService service) {
+		flattrService = service;
+		flush();
+	}
+
+	/**
+	 * Record a flattr action. The buttons of the thing are displayed as
+	 * flattred immediately.
+	 * 
+	 * @return <code>false</code> if the thing is already known as flattred,
+	 *         or if an action is already pending for it.
+	 */
+	public synchronized boolean flattr(String thingId) {
+		if (thingIds.contains(thingId)) {
+			return false;
+		}
+		ThingCache cache = FlattrSDK.getThingCache();
+		ThingState latest = cache.getLatest(thingId);
+		if ((latest != null) && (latest.getStatus() == ThingStatus.FLATTRED)) {
+			return false;
+		}
+		thingIds.add(thingId);
+		scheduleWrite();
+		if (latest != null) {
+			ThingState state = applyPending(latest);
+			cache.put(state);
+			ThingLoader.publish(state);
+		}
+		updateReceiver();
+		flush();
+		return true;
+	}
+
+	public synchronized int getPendingCount() {
+		return thingIds.size();
+	}
+
+	/**
+	 * Send the pending actions, unless it is already being done or a retry is
+	 * scheduled.
+	 */
+	public synchronized void flush() {
+		if (flushing || retryScheduled || (flattrService == null)
+				|| thingIds.isEmpty()) {
+			return;
+		}
+		flushing = true;
+		executor.execute(flushBatch, LoaderExecutor.PRIORITY_VISIBLE);
+	}
+
+	/**
+	 * Apply the pending actions to a state got from the Flattr application
+	 * or the Rest API, which may not know them yet.
+	 */
+	synchronized ThingState applyPending(ThingState state) {
+		if ((state.getStatus() == ThingStatus.FLATTRED)
+				|| !thingIds.contains(state.getThingId())) {
+			return state;
+		}
+		return new ThingState(state.getThingId(), state.getClicks() + 1,
+				ThingStatus.FLATTRED, true, state.getLoadedAt());
+	}
+
+	private void flushBatch() {
+		List<String> batch;
+		FlattrService service;
+		synchronized (this) {
+			batch = new ArrayList<String>(thingIds.subList(0,
+					Math.min(BATCH_SIZE, thingIds.size())));
+			service = flattrService;
+		}
+		List<String> done = new ArrayList<String>(batch.size());
+		boolean failed = false;
+		// The radio is awake: deferred loads can go along
+		FlattrSDK.getLoadingPolicy().onNetworkActivity(
+				SystemClock.uptimeMillis());
+		for (String thingId : batch) {
+			try {
+				service.click(Thing.withId(thingId));
+				done.add(thingId);
+				FlattrSDK.getUserStatusIndex().addFlattred(thingId);
+			} catch (RateLimitExceededException e) {
+				Log.d(FlattrSDK.LOG_TAG, "Rate limit exceeded while flattring "
+						+ thingId, e);
+				failed = true;
+				break;
+			} catch (FlattrServiceException e) {
+				if (!isRejection(e)) {
+					// Maybe a server or credentials problem: keep the flattr
+					Log.d(FlattrSDK.LOG_TAG, "Error while flattring "
+							+ thingId, e);
+					failed = true;
+					break;
+				}
+				// Retrying would not help
+				Log.d(FlattrSDK.LOG_TAG, "Flattr of " + thingId
+						+ " rejected", e);
+				done.add(thingId);
+				// The optimistic state may be wrong
+				FlattrSDK.getThingCache().remove(thingId);
+			} catch (Exception e) {
+				Log.d(FlattrSDK.LOG_TAG, "Error while flattring " + thingId, e);
+				failed = true;
+				break;
+			}
+		}
+		synchronized (this) {
+			flushing = false;
+			if (!done.isEmpty()) {
+				thingIds.removeAll(done);
+				scheduleWrite();
+				updateReceiver();
+			}
+			if (failed) {
+				scheduleRetry();
+			} else {
+				failures = 0;
+				flush();
+			}
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the flattr is definitively refused: the
+	 *         thing does not exist, is already flattred or belongs to the
+	 *         user.
+	 */
+	static boolean isRejection(FlattrServiceException e) {
+		if (e instanceof NotFoundException) {
+			return true;
+		}
+		if (e instanceof ForbiddenException) {
+			String code = e.getCode();
+			return "flattr_once".equals(code) || "flattr_owner".equals(code);
+		}
+		return false;
+	}
+
+	private void scheduleRetry() {
+		long delay = FailurePolicy.getBackoffDelay(INITIAL_RETRY_DELAY,
+				MAX_RETRY_DELAY, failures++, random);
+		retryScheduled = true;
+		handler.postDelayed(retry, delay);
+	}
+
+	/**
+	 * Listen to the connectivity changes as long as there are pending
+	 * actions.
+	 */
+	private void updateReceiver() {
+		try {
+			if (!thingIds.isEmpty() && !receiverRegistered) {
+				context.registerReceiver(connectivityReceiver,
+						new IntentFilter(
+								ConnectivityManager.CONNECTIVITY_ACTION));
+				receiverRegistered = true;
+			} else if (thingIds.isEmpty() && receiverRegistered) {
+				context.unregisterReceiver(connectivityReceiver);
+				receiverRegistered = false;
+			}
+		} catch (Exception e) {
+			// Not critical: the backoff retries anyway
+			Log.d(FlattrSDK.LOG_TAG, "Cannot follow connectivity changes", e);
+		}
+	}
+
+	private void read() {
+		if (!file.exists()) {
+			return;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new FileInputStream(file));
+			if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) {
+				throw new IOException("Unknown format");
+			}
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				thingIds.add(in.readUTF());
+			}
+		} catch (IOException e) {
+			Log.d(FlattrSDK.LOG_TAG, "Cannot read pending flattr actions "
+					+ "from " + file, e);
+		} finally {
+			close(in);
+		}
+		updateReceiver();
+	}
+
+	/**
+	 * Write the actions in the background: not in the UI thread, and not
+	 * while holding the lock of the queue. Writes requested before the
+	 * previous one started are merged.
+	 */
+	private void scheduleWrite() {
+		if (!writeScheduled) {
+			writeScheduled = true;
+			ThingLoader.runInBackground(writeActions,
+					LoaderExecutor.PRIORITY_VISIBLE);
+		}
+	}
+
+	private void write(List<String> ids) {
+		File tmpFile = new File(file.getPath() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new FileOutputStream(tmpFile));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(ids.size());
+			for (String thingId : ids) {
+				out.writeUTF(thingId);
+			}
+			out.close();
+			out = null;
+			if (!tmpFile.renameTo(file)) {
+				throw new IOException("Cannot rename " + tmpFile + " to "
+						+ file);
+			}
+		} catch (IOException e) {
+			Log.d(FlattrSDK.LOG_TAG, "Cannot write pending flattr actions "
+					+ "to " + file, e);
+		} finally {
+			close(out);
+		}
+	}
+
+	private static void close(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				// Nothing to do
+			}
+		}
+	}
+}
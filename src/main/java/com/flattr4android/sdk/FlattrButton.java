@@ -14,23 +14,12 @@
  */
 package com.flattr4android.sdk;
 
-import org.shredzone.flattr4j.FlattrFactory;
 import org.shredzone.flattr4j.FlattrService;
 import org.shredzone.flattr4j.OpenService;
 import org.shredzone.flattr4j.model.Thing;
 
-import android.content.ContentResolver;
 import android.content.Context;
-import android.database.Cursor;
-import android.graphics.Bitmap;
 import android.graphics.Canvas;
-import android.graphics.Paint;
-import android.graphics.Paint.FontMetrics;
-import android.graphics.drawable.BitmapDrawable;
-import android.graphics.drawable.Drawable;
-import android.net.Uri;
-import android.os.AsyncTask;
-import android.text.TextPaint;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.View;
@@ -56,52 +45,52 @@ public class FlattrButton extends View {
 
 	public static final int CLICK_TEXT_COLOR = 0xff000000;
 
-	private boolean verticalResIntialized = false;
-	private Drawable buttonTop;
-	private int buttonTopWidth, buttonTopHeight;
-	private Drawable buttonVMiddle;
-	private int buttonVMiddleWidth, buttonVMiddleHeight;
-	private Drawable buttonBottomFlattr, buttonBottomFlattred,
-			buttonBottomMyThing, buttonBottomInactive;
-	private int buttonBottomWidth, buttonBottomHeight;
+	private static final String LOADING_TEXT = "?";
+	private static final String ERROR_TEXT = "!";
 
-	private TextPaint verticalClickPaint;
-	private float verticalClickTextHeight;
-
-	private boolean horizontalResIntialized = false;
-	private Drawable buttonLeftFlattr, buttonLeftFlattred, buttonLeftMyThing,
-			buttonLeftInactive;
-	private int buttonLeftWidth, buttonLeftHeight;
-	private Drawable buttonRight;
-	private int buttonRightWidth, buttonRightHeight;
-
-	private TextPaint horizontalClickPaint;
-	private float horizontalClickTextHeight;
+	private ButtonArtwork artwork;
 
 	private String style = BUTTON_STYLE_HORIZONTAL;
 
+	// Null for the client shared by all buttons, see FlattrSDK.getOpenService()
 	private OpenService flattrService;
-	private String thingId;
-	private ThingStatus thingStatus;
-	private int thingClicks;
-	private boolean loading = false, thingSet = false,
-			thingStatusKnown = false;
-	private boolean thingGotAsUser;
-	private Exception thingError;
+	// Published as a whole, read without locking (see ButtonState). The
+	// other fields are only used on the UI thread.
+	private volatile ButtonState state = ButtonState.UNBOUND;
+	private boolean loading = false;
+	// Priority the pending load was requested with
+	private int loadPriority;
+	private boolean attached = false;
+	private boolean windowVisible = false;
+	// Thing registered to the refresh scheduler, if any
+	private String refreshedThingId;
+	// Created on first use, then reused for each new state
+	private AnimationSet hideAnimation, showAnimation;
+	// Binding generation of the state being animated
+	private int animationGeneration;
+	private LoadCallback loadCallback = new LoadCallback(state.getGeneration());
+	// Consecutive failed loads of the bound thing
+	private int loadFailures = 0;
+	private final Runnable retryLoad = new Runnable() {
+		public void run() {
+			retryLoading();
+		}
+	};
 
 	public FlattrButton(Context context) throws FlattrSDKException {
 		super(context);
 		
+		FlattrSDK.initThingCache(context);
 		initResources();
 		initListener();
-		flattrService = FlattrFactory.getInstance().createOpenService();
 	}
 
 	public FlattrButton(Context context, AttributeSet attrs)
 			throws FlattrSDKException {
 		super(context, attrs);
 
-		setThingId(getAttribute(attrs, "thing_id", false));
+		FlattrSDK.initThingCache(context);
+		bind(getAttribute(attrs, "thing_id", false));
 
 		String style = getAttribute(attrs, "button_style", false);
 		if (style != null) {
@@ -109,13 +98,13 @@ public class FlattrButton extends View {
 		}
 		initResources();
 		initListener();
-		flattrService = FlattrFactory.getInstance().createOpenService();
 	}
 
 	private void initListener() {
 		setOnClickListener(new View.OnClickListener() {
 
 			public void onClick(View view) {
+				String thingId = getThingId();
 				try {
 					FlattrSDK.displayThing(getContext(), thingId);
 				} catch (FlattrSDKException e) {
@@ -126,19 +115,154 @@ public class FlattrButton extends View {
 		});
 	}
 
-	private synchronized void loadThing(boolean forceIfThingExists) {
-		if (((thingId != null) && (flattrService != null) && (!loading)) && 
-			(forceIfThingExists || !thingSet)) {
-			loading = true;
-			new ThingLoader(this, flattrService, thingId).execute();
+	private void loadThing(boolean forceIfThingExists) {
+		ButtonState current = state;
+		if ((current.getThingId() == null) || loading) {
+			return;
+		}
+		if (forceIfThingExists || current.isStale()
+				|| (!current.isSet() && (current.getError() == null))) {
+			startLoading();
+		}
+	}
+
+	private void startLoading() {
+		loading = true;
+		loadPriority = getLoadPriority();
+		ButtonState current = state.loading();
+		state = current;
+		ThingLoader.load(getContext().getContentResolver(), flattrService,
+				current.getThingId(), loadPriority, loadCallback);
+	}
+
+	/**
+	 * Raise the priority of the pending load if the button became visible
+	 * since it was requested (typically a button bound before being
+	 * attached). A load deferred until the next burst is then sent with the
+	 * next batch.
+	 */
+	private void updateLoadPriority() {
+		if (!loading) {
+			return;
+		}
+		int priority = getLoadPriority();
+		if (priority < loadPriority) {
+			loadPriority = priority;
+			ThingLoader.load(getContext().getContentResolver(),
+					flattrService, state.getThingId(), priority, loadCallback);
+		}
+	}
+
+	private void cancelLoading() {
+		String thingId = state.getThingId();
+		if (loading && (thingId != null)) {
+			ThingLoader.cancel(thingId, loadCallback);
+		}
+		loading = false;
+	}
+
+	private void scheduleRetry() {
+		removeCallbacks(retryLoad);
+		postDelayed(retryLoad, ThingLoader.getRetryDelay(loadFailures));
+	}
+
+	private void retryLoading() {
+		if (attached && (state.getError() != null)) {
+			// Keep displaying the clicks rather than "?" during the retry
+			state = state.retrying();
+			loadThing(true);
+		}
+	}
+
+	private int getLoadPriority() {
+		if (!attached) {
+			return LoaderExecutor.PRIORITY_BACKGROUND;
+		}
+		if (isShown() && (getWindowVisibility() == VISIBLE)) {
+			return LoaderExecutor.PRIORITY_VISIBLE;
+		}
+		return LoaderExecutor.PRIORITY_ATTACHED;
+	}
+
+	@Override
+	protected void onAttachedToWindow() {
+		super.onAttachedToWindow();
+		attached = true;
+		ButtonState current = state;
+		if (current.getError() != null) {
+			scheduleRetry();
+		}
+		if (current.getThingId() != null) {
+			// Follow the changes made in the Flattr application
+			FlattrSDK.getThingRepository(getContext()).watch(
+					current.getThingId(), loadCallback);
+		}
+		windowVisible = (getWindowVisibility() == VISIBLE);
+		updateLoadPriority();
+		updateRefreshRegistration();
+	}
+
+	@Override
+	protected void onWindowVisibilityChanged(int visibility) {
+		super.onWindowVisibilityChanged(visibility);
+		// The window is hidden when the application goes to the background
+		windowVisible = (visibility == VISIBLE);
+		updateRefreshRegistration();
+	}
+
+	/**
+	 * Refresh the thing periodically while somebody can see it.
+	 */
+	private void updateRefreshRegistration() {
+		ButtonState current = state;
+		String refreshed = null;
+		if (attached && windowVisible) {
+			refreshed = current.getThingId();
+		}
+		boolean unchanged = (refreshed == null) ? (refreshedThingId == null)
+				: refreshed.equals(refreshedThingId);
+		if (unchanged) {
+			return;
+		}
+		if (refreshedThingId != null) {
+			RefreshScheduler.unregister(refreshedThingId);
+		}
+		refreshedThingId = refreshed;
+		if (refreshed != null) {
+			RefreshScheduler.register(getContext().getContentResolver(),
+					flattrService, refreshed, current.isSet() ? current
+							.getThing().getClicks() : -1);
+		}
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		attached = false;
+		// Nobody will see the result
+		cancelLoading();
+		removeCallbacks(retryLoad);
+		String thingId = state.getThingId();
+		if (thingId != null) {
+			FlattrSDK.getThingRepository(getContext()).unwatch(thingId,
+					loadCallback);
 		}
+		updateRefreshRegistration();
 	}
 	
 	/**
-	 * Set REST client.
+	 * Set REST client, or <code>null</code> to use the client shared by all
+	 * buttons (see {@link FlattrSDK#setOpenService(OpenService)}). Like the
+	 * other methods of a view, it must be called on the UI thread.
 	 */
-	public synchronized void setFlattrRestClient(FlattrService service) {
+	public void setFlattrRestClient(FlattrService service) {
 		flattrService = service;
+		if (refreshedThingId != null) {
+			// Register again with the new client
+			RefreshScheduler.unregister(refreshedThingId);
+			refreshedThingId = null;
+		}
+		updateRefreshRegistration();
 		loadThing(true);
 	}
 
@@ -146,34 +270,102 @@ public class FlattrButton extends View {
 	 * Set targeted thing Id, got from <a
 	 * href="http://flattr4android.com/sdk/">Flattr4Android.com</a> or the
 	 * Flattr Rest API.
+	 * 
+	 * @see FlattrButton#bind(String)
+	 */
+	public void setThingId(String thingId) {
+		bind(thingId);
+	}
+
+	/**
+	 * Bind the button to a thing. Safe to call on a recycled button (eg. in
+	 * <code>Adapter.getView</code>): the results of loads started for the
+	 * previously bound thing are ignored, and the button is displayed
+	 * immediately when the state of the thing is already known.
+	 */
+	public void bind(String thingId) {
+		if ((thingId != null) && thingId.equals(state.getThingId())) {
+			// Keep the current state and the load in progress, if any
+			loadThing(false);
+			return;
+		}
+		releaseBinding(thingId);
+		if (thingId == null) {
+			invalidate();
+			return;
+		}
+		if (attached) {
+			// Follow the changes made in the Flattr application
+			FlattrSDK.getThingRepository(getContext()).watch(thingId,
+					loadCallback);
+		}
+		// Another button may have loaded this thing recently, or it may be
+		// known from a previous run
+		ThingCache cache = FlattrSDK.getThingCache();
+		ThingState cachedState = cache.getLatest(thingId);
+		if ((cachedState != null) && cache.isFresh(cachedState)) {
+			FlattrSDK.getMetrics().increment(MetricsListener.Counter.CACHE_HIT,
+					1);
+			state = state.withThing(cachedState, false, true);
+		} else {
+			FlattrSDK.getMetrics().increment(
+					MetricsListener.Counter.CACHE_MISS, 1);
+			if (cachedState != null) {
+				// Display the stale state, and refresh it in the background
+				state = state.withThing(cachedState, true, true);
+			}
+			startLoading();
+		}
+		updateRefreshRegistration();
+		invalidate();
+	}
+
+	/**
+	 * Unbind the button from its thing, for example when its row is
+	 * recycled. The pending load, if any, is cancelled and the button
+	 * displays a default state until it is bound again.
+	 */
+	public void unbind() {
+		releaseBinding(null);
+		invalidate();
+	}
+
+	/**
+	 * Forget everything about the bound thing and start a new binding
+	 * generation.
 	 */
-	public synchronized void setThingId(String thingId) {
-		this.thingId = thingId;
-// TODO: What is the best alternative to "cached thing" in FLattr4J?
-//		if (flattrService != null) {
-//			Thing cachedThing = flattrService.getThing(Thing.withId(thingId));
-//			if (cachedThing != null) {
-//				initWithThing(cachedThing, true);
-//			}
-//		}
-		if ((flattrService != null) && (thingId != null) && (!loading)) {
-			loading = true;
-			new ThingLoader(this, flattrService, thingId).execute();
+	private void releaseBinding(String newThingId) {
+		cancelLoading();
+		String thingId = state.getThingId();
+		if (attached && (thingId != null)) {
+			FlattrSDK.getThingRepository(getContext()).unwatch(thingId,
+					loadCallback);
 		}
+		removeCallbacks(retryLoad);
+		loadFailures = 0;
+		ButtonState bound = state.bind(newThingId);
+		loadCallback = new LoadCallback(bound.getGeneration());
+		state = bound;
+		updateRefreshRegistration();
 	}
 
 	public void initWithThing(Thing thing, boolean thingGotAsUser) {
-		this.thingId = thing.getThingId();
-		this.thingStatus = FlattrSDK.getStatus(thing);
-		this.thingClicks = thing.getClicks();
-		this.thingGotAsUser = thingGotAsUser;
-		this.thingStatusKnown = true;
-		this.thingSet = true;
-		this.loading = true;
+		ThingState thingState = new ThingState(thing.getThingId(),
+				thing.getClicks(), FlattrSDK.getStatus(thing), thingGotAsUser);
+		FlattrSDK.getThingCache().put(thingState);
+		if (thingState.getThingId().equals(state.getThingId())) {
+			// No need to wait for the pending load, if any
+			cancelLoading();
+			state = state.withThing(thingState, false, true);
+			invalidate();
+		} else {
+			// Bound from the freshly cached state
+			bind(thingState.getThingId());
+		}
 	}
 
 	public String getThingId() {
-		return thingId;
+		return state.getThingId();
 	}
 
 	/**
@@ -212,121 +404,8 @@ public class FlattrButton extends View {
 	}
 
 	private void initResources() throws FlattrSDKException {
-		Bitmap tmp;
-
-		if ((style.equals(BUTTON_STYLE_HORIZONTAL))
-				|| style.equals(BUTTON_STYLE_MINI)) {
-			if (verticalResIntialized) {
-				// Clear reference to allow garbage collection
-				verticalResIntialized = false;
-				buttonTop = null;
-				buttonVMiddle = null;
-				buttonBottomFlattr = null;
-				buttonBottomFlattred = null;
-				buttonBottomMyThing = null;
-				buttonBottomInactive = null;
-
-				verticalClickPaint = null;
-			}
-			if (!horizontalResIntialized) {
-				int[] resourceIds;
-				if (style.equals(BUTTON_STYLE_HORIZONTAL)) {
-					resourceIds = new int[] {
-							R.drawable.button_horizontal_left_flattr,
-							R.drawable.button_horizontal_left_flattred,
-							R.drawable.button_horizontal_left_mything,
-							R.drawable.button_horizontal_left_inactive,
-							R.drawable.button_horizontal_right };
-				} else {
-					resourceIds = new int[] {
-							R.drawable.button_mini_left_flattr,
-							R.drawable.button_mini_left_flattred,
-							R.drawable.button_mini_left_mything,
-							R.drawable.button_mini_left_inactive,
-							R.drawable.button_mini_right
-
-					};
-				}
-				buttonLeftFlattr = getResources().getDrawable(resourceIds[0]);
-				((BitmapDrawable) buttonLeftFlattr).setAntiAlias(true);
-				buttonLeftFlattred = getResources().getDrawable(resourceIds[1]);
-				((BitmapDrawable) buttonLeftFlattred).setAntiAlias(true);
-				buttonLeftMyThing = getResources().getDrawable(resourceIds[2]);
-				((BitmapDrawable) buttonLeftMyThing).setAntiAlias(true);
-				buttonLeftInactive = getResources().getDrawable(resourceIds[3]);
-				((BitmapDrawable) buttonLeftInactive).setAntiAlias(true);
-				tmp = ((BitmapDrawable) buttonLeftFlattr).getBitmap();
-				buttonLeftWidth = tmp.getWidth();
-				buttonLeftHeight = tmp.getHeight();
-
-				buttonRight = getResources().getDrawable(resourceIds[4]);
-				((BitmapDrawable) buttonRight).setAntiAlias(true);
-				tmp = ((BitmapDrawable) buttonRight).getBitmap();
-				buttonRightWidth = tmp.getWidth();
-				buttonRightHeight = tmp.getHeight();
-
-				FontMetrics metrics;
-
-				horizontalClickPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
-				horizontalClickPaint.setColor(CLICK_TEXT_COLOR);
-				horizontalClickPaint.setTextAlign(Paint.Align.CENTER);
-				horizontalClickPaint.setTextSize(buttonRightHeight / 2f);
-				metrics = horizontalClickPaint.getFontMetrics();
-				horizontalClickTextHeight = metrics.ascent + metrics.descent;
-
-				horizontalResIntialized = true;
-			}
-		} else if (style.equals(BUTTON_STYLE_VERTICAL)) {
-			if (horizontalResIntialized) {
-				// Clear reference to allow garbage collection
-				horizontalResIntialized = false;
-				buttonLeftFlattr = null;
-				buttonLeftFlattred = null;
-				buttonLeftMyThing = null;
-				buttonLeftInactive = null;
-				buttonRight = null;
-
-				horizontalClickPaint = null;
-			}
-			if (!verticalResIntialized) {
-				buttonTop = getResources().getDrawable(R.drawable.button_vertical_top);
-				tmp = ((BitmapDrawable) buttonTop).getBitmap();
-				buttonTopWidth = tmp.getWidth();
-				buttonTopHeight = tmp.getHeight();
-
-				buttonVMiddle = getResources().getDrawable(R.drawable.button_vertical_middle);
-				tmp = ((BitmapDrawable) buttonVMiddle).getBitmap();
-				buttonVMiddleWidth = tmp.getWidth();
-				buttonVMiddleHeight = tmp.getHeight();
-
-				buttonBottomFlattr = getResources()
-						.getDrawable(R.drawable.button_vertical_bottom_flattr);
-				((BitmapDrawable) buttonBottomFlattr).setAntiAlias(true);
-				buttonBottomFlattred = getResources()
-						.getDrawable(R.drawable.button_vertical_bottom_flattred);
-				((BitmapDrawable) buttonBottomFlattred).setAntiAlias(true);
-				buttonBottomMyThing = getResources()
-						.getDrawable(R.drawable.button_vertical_bottom_mything);
-				((BitmapDrawable) buttonBottomMyThing).setAntiAlias(true);
-				buttonBottomInactive = getResources()
-						.getDrawable(R.drawable.button_vertical_bottom_inactive);
-				((BitmapDrawable) buttonBottomInactive).setAntiAlias(true);
-				tmp = ((BitmapDrawable) buttonBottomFlattr).getBitmap();
-				buttonBottomWidth = tmp.getWidth();
-				buttonBottomHeight = tmp.getHeight();
-
-				FontMetrics metrics;
-
-				verticalClickPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
-				verticalClickPaint.setColor(CLICK_TEXT_COLOR);
-				verticalClickPaint.setTextAlign(Paint.Align.CENTER);
-				verticalClickPaint.setTextSize(buttonTopHeight / 3f);
-				metrics = verticalClickPaint.getFontMetrics();
-				verticalClickTextHeight = metrics.ascent + metrics.descent;
-
-				verticalResIntialized = true;
-			}
-		}
+		// Artwork is shared by all buttons of the same style
+		artwork = ButtonArtwork.get(getResources(), style);
 	}
 
 	@Override
@@ -341,238 +420,181 @@ public class FlattrButton extends View {
 			// "At most" must sometimes be infringed. For example, expected
 			// height is sometimes 0... not very convenient.
 		case (MeasureSpec.UNSPECIFIED):
-			if (style.equals(BUTTON_STYLE_VERTICAL)) {
-				measuredWidth = buttonTopWidth;
-				measuredHeight = buttonTopHeight + buttonVMiddleHeight
-						+ buttonBottomHeight;
-			} else {
-				measuredWidth = buttonLeftWidth + buttonRightWidth;
-				measuredHeight = buttonLeftHeight;
-			}
+			measuredWidth = artwork.getWidth();
+			measuredHeight = artwork.getHeight();
 			break;
 		}
-		Log.d(FlattrSDK.LOG_TAG, "Button dimensions: " + measuredWidth + " x "
-				+ measuredHeight);
 		setMeasuredDimension(measuredWidth, measuredHeight);
 	}
 
 	@Override
 	public void onDraw(Canvas canvas) {
-		if (style.equals(BUTTON_STYLE_VERTICAL)) {
-			buttonTop.setBounds(0, 0, buttonTopWidth, buttonTopHeight);
-			buttonTop.draw(canvas);
-
-			buttonVMiddle.setBounds(0, buttonTopHeight, buttonVMiddleWidth,
-					buttonTopHeight + buttonVMiddleHeight);
-			buttonVMiddle.draw(canvas);
-
-			Drawable buttonBottom;
-			switch (getThingStatus()) {
-			case FLATTRED:
-				buttonBottom = buttonBottomFlattred;
-				break;
-			case INACTIVE:
-				buttonBottom = buttonBottomInactive;
-				break;
-			case DEFAULT:
-				buttonBottom = buttonBottomFlattr;
-				break;
-			case OWNER:
-				buttonBottom = buttonBottomMyThing;
-				break;
-			default:
-				// Other cases: display a regular button
-				buttonBottom = buttonBottomFlattr;
-				break;
-			}
-			buttonBottom.setBounds(0, buttonTopHeight + buttonVMiddleHeight,
-					buttonBottomWidth, buttonTopHeight + buttonVMiddleHeight
-							+ buttonBottomHeight);
-			buttonBottom.draw(canvas);
-
-			if (thingStatusKnown && thingSet) {
-				drawVerticalClick(canvas, Integer.toString(thingClicks));
-			} else if (thingStatusKnown && (thingError != null)) {
-				Log.d(FlattrSDK.LOG_TAG,
-						"Error while loading thing " + thingId,
-						(Exception) thingError);
-				drawVerticalClick(canvas, "!");
-			} else {
-				// The thing is being loaded
-				drawVerticalClick(canvas, "?");
-			}
+		// No allocation here: this runs for every frame
+		FlattrSDK.getMetrics().increment(MetricsListener.Counter.DRAW, 1);
+		// One consistent snapshot for the whole frame
+		ButtonState current = state;
+		artwork.draw(canvas, current.getDisplayedStatus());
+
+		if (current.isDisplayed() && current.isSet()) {
+			artwork.drawClicks(canvas, current.getClicksText());
+		} else if (current.isDisplayed() && (current.getError() != null)) {
+			artwork.drawClicks(canvas, ERROR_TEXT);
 		} else {
-			Drawable buttonLeft;
-			switch (getThingStatus()) {
-			case FLATTRED:
-				buttonLeft = buttonLeftFlattred;
-				break;
-			case INACTIVE:
-				buttonLeft = buttonLeftInactive;
-				break;
-			case DEFAULT:
-				buttonLeft = buttonLeftFlattr;
-				break;
-			case OWNER:
-				buttonLeft = buttonLeftMyThing;
-				break;
-			default:
-				// Other cases: display a regular button
-				buttonLeft = buttonLeftFlattr;
-				break;
-			}
-			buttonLeft.setBounds(0, 0, buttonLeftWidth, buttonLeftHeight);
-			buttonLeft.draw(canvas);
-
-			buttonRight.setBounds(buttonLeftWidth, 0,
-					buttonLeftWidth + buttonRightWidth,
-					buttonRightHeight);
-			buttonRight.draw(canvas);
-
-			if (thingStatusKnown && thingSet) {
-				drawHorizontalClick(canvas, Integer.toString(thingClicks));
-			} else if (thingStatusKnown && (thingError != null)) {
-				drawHorizontalClick(canvas, "!");
-			} else {
-				// The thing is being loaded
-				drawHorizontalClick(canvas, "?");
-			}
+			// The thing is being loaded
+			artwork.drawClicks(canvas, LOADING_TEXT);
 		}
-		
-		// Load the status if not done
+
+		// Load the status if not done, or sooner now it is drawn
+		updateLoadPriority();
 		loadThing(false);
 	}
 
 	public ThingStatus getThingStatus() {
-		if (thingStatusKnown && thingSet && thingGotAsUser) {
-			return thingStatus;
-		} else {
-			// As long as we don't know the real status, display a default
-			// button
-			return ThingStatus.DEFAULT;
-		}
+		// As long as we don't know the real status, display a default button
+		return state.getDisplayedStatus();
 	}
 
-	private void drawVerticalClick(Canvas canvas, String text) {
-		canvas.drawText(text, buttonTopWidth / 2f,
-				(buttonTopHeight - verticalClickTextHeight) / 2f,
-				verticalClickPaint);
-	}
+	/**
+	 * Callback of a binding generation. Called on the UI thread.
+	 */
+	private class LoadCallback implements ThingLoader.Callback {
 
-	private void drawHorizontalClick(Canvas canvas, String text) {
-		// In the formula, the 0.92 factor is there to take the drop shadow (at
-		// the bottom of the button) into account
-		canvas.drawText(text, buttonLeftWidth + (buttonRightWidth / 2f),
-				((buttonRightHeight * 0.92f) - horizontalClickTextHeight) / 2f,
-				horizontalClickPaint);
-	}
+		private final int generation;
 
-	class ThingLoader extends AsyncTask<Void, Void, Void> {
-
-		private FlattrButton button;
-		private OpenService flattrService;
-		private String thingId;
-
-		public ThingLoader(FlattrButton button, OpenService flattrService,
-				String thingId) {
-			this.button = button;
-			this.flattrService = flattrService;
-			this.thingId = thingId;
-
-			// Invalidate the current status, if any
-			button.thingSet = false;
-			button.thingError = null;
-		}
-
-		@Override
-		protected Void doInBackground(Void... arg0) {
-			// First plan: get the thing through the app
-			try {
-				ContentResolver cr = getContext().getContentResolver();
-				Cursor c = cr.query(
-						Uri.parse(FlattrSDK.FLATTR_PROVIDER_CONTENT_URI
-								+ "thing/id/" + thingId), null, null, null,
-						null);
-				if ((c != null) && (c.moveToFirst())) {
-					Log.d(FlattrSDK.LOG_TAG, "Thing " + thingId
-							+ " got from Flattr application");
-// TODO: Get the actual status
-//					button.thingStatus = c.getInt(c.getColumnIndex("int_status"));
-					button.thingStatus = ThingStatus.DEFAULT;
-					button.thingClicks = c.getInt(c.getColumnIndex("clicks"));
-					// Thing obtained with the user credentials (ie. the
-					// Flattr app)
-					button.thingGotAsUser = true;
-					button.thingSet = true;
-					return null;
-				}
-			} catch (Exception e) {
-				Log.d(FlattrSDK.LOG_TAG, "Error while trying to get thing "
-						+ thingId + " from Flattr application", e);
-				button.thingError = e;
-			}
+		LoadCallback(int generation) {
+			this.generation = generation;
+		}
 
-			// Second plan: get the thing with local means
-			try {
-				if (!button.thingSet) {
-					Thing thing = flattrService.getThing(Thing.withId(thingId));
+		private boolean isCurrent(String loadedThingId) {
+			// The button may have been bound to another thing in the meantime
+			ButtonState current = state;
+			return (generation == current.getGeneration())
+					&& loadedThingId.equals(current.getThingId());
+		}
 
-					Log.d(FlattrSDK.LOG_TAG, "Thing " + thingId
-							+ " got with local means");
+		public void onThingLoaded(ThingState thingState) {
+			if (!isCurrent(thingState.getThingId())) {
+				return;
+			}
+			loading = false;
+			loadFailures = 0;
+			ButtonState current = state;
+			if (current.showsSameThing(thingState)) {
+				// The button already displays this state, typically after a
+				// refresh: no need to draw it again
+				state = current.withThing(thingState, false, true);
+				return;
+			}
+			// Displayed at the end of the first half of the animation
+			state = current.withThing(thingState, false, false);
+			showLoadedThing(generation);
+		}
 
-					button.thingStatus = FlattrSDK.getStatus(thing);
-					button.thingClicks = thing.getClicks();
-					// Thing obtained with the app credentials
-					button.thingGotAsUser = false;
-					button.thingSet = true;
-				}
-			} catch (Exception e) {
-				Log.d(FlattrSDK.LOG_TAG, "Error while loading thing " + thingId
-						+ " with local means", e);
-				button.thingError = e;
+		public void onLastKnownState(ThingState thingState) {
+			ButtonState current = state;
+			if (!loading || !isCurrent(thingState.getThingId())
+					|| current.isSet()) {
+				return;
 			}
+			// Displayed while the thing is loaded
+			state = current.withThing(thingState, true, true);
+			invalidate();
+		}
 
-			return null;
+		public void onThingLoadFailed(String failedThingId, Exception error) {
+			if (!isCurrent(failedThingId)) {
+				return;
+			}
+			loading = false;
+			if (loadFailures == 0) {
+				// Not again for each retry
+				Log.d(FlattrSDK.LOG_TAG, "Error while loading thing "
+						+ failedThingId, error);
+			}
+			// Do not try again on every frame, but later
+			loadFailures++;
+			if (attached) {
+				scheduleRetry();
+			}
+			ButtonState current = state;
+			if (current.isSet()) {
+				// The refresh of a displayed state failed: keep it
+				state = current.withError(error, current.isDisplayed());
+				return;
+			}
+			if (loadFailures == 1) {
+				state = current.withError(error, false);
+				showLoadedThing(generation);
+			} else {
+				// The error was already announced
+				state = current.withError(error, true);
+				invalidate();
+			}
 		}
+	}
 
-		@Override
-		protected void onPostExecute(Void result) {
-			super.onPostExecute(result);
-			AlphaAnimation disappear = new AlphaAnimation(1, 0);
-			ScaleAnimation reduce = new ScaleAnimation(1, 0.9f, 1, 0.9f,
-					button.getWidth() / 2, button.getHeight() / 2);
-			AnimationSet firstAnim = new AnimationSet(false);
-			firstAnim.addAnimation(disappear);
-			firstAnim.addAnimation(reduce);
-			firstAnim.setDuration(200);
-			firstAnim.setAnimationListener(new Animation.AnimationListener() {
+	/**
+	 * Display the new state of the thing, with a "hide and show again"
+	 * animation when the button is visible.
+	 */
+	private void showLoadedThing(int generation) {
+		if (!attached || !windowVisible || !isShown()) {
+			// Nobody would see the animation
+			state = state.displayed();
+			invalidate();
+			return;
+		}
+		if (hideAnimation == null) {
+			initAnimations();
+		}
+		animationGeneration = generation;
+		hideAnimation.reset();
+		startAnimation(hideAnimation);
+	}
 
-				public void onAnimationStart(Animation animation) {
-					// Nothing to do
-				}
+	/**
+	 * Animations are created once per button, and pivot around the center
+	 * of the button whatever its size.
+	 */
+	private void initAnimations() {
+		hideAnimation = new AnimationSet(false);
+		hideAnimation.addAnimation(new AlphaAnimation(1, 0));
+		hideAnimation.addAnimation(new ScaleAnimation(1, 0.9f, 1, 0.9f,
+				Animation.RELATIVE_TO_SELF, 0.5f, Animation.RELATIVE_TO_SELF,
+				0.5f));
+		hideAnimation.setDuration(200);
+		hideAnimation.setAnimationListener(new Animation.AnimationListener() {
+
+			public void onAnimationStart(Animation animation) {
+				// Nothing to do
+			}
 
-				public void onAnimationRepeat(Animation animation) {
-					// Nothing to do
-				}
+			public void onAnimationRepeat(Animation animation) {
+				// Nothing to do
+			}
 
-				public void onAnimationEnd(Animation animation) {
-					// Mark thing as "known" for it to be displayed
-					thingStatusKnown = true;
-
-					// Update view, start "Show again" animation
-					button.invalidate();
-					AlphaAnimation appear = new AlphaAnimation(0, 1);
-					ScaleAnimation zoom = new ScaleAnimation(0.9f, 1, 0.9f, 1,
-							button.getWidth() / 2, button.getHeight() / 2);
-					AnimationSet secondAnim = new AnimationSet(false);
-					secondAnim.addAnimation(appear);
-					secondAnim.addAnimation(zoom);
-					secondAnim.setDuration(200);
-					button.startAnimation(secondAnim);
+			public void onAnimationEnd(Animation animation) {
+				if (animationGeneration != state.getGeneration()) {
+					// Rebound during the animation: the new binding
+					// manages the display on its own
+					return;
 				}
-			});
-			startAnimation(firstAnim);
-		}
-	};
+				// Mark thing as "known" for it to be displayed
+				state = state.displayed();
+
+				// Update view, start "Show again" animation
+				invalidate();
+				showAnimation.reset();
+				startAnimation(showAnimation);
+			}
+		});
+
+		showAnimation = new AnimationSet(false);
+		showAnimation.addAnimation(new AlphaAnimation(0, 1));
+		showAnimation.addAnimation(new ScaleAnimation(0.9f, 1, 0.9f, 1,
+				Animation.RELATIVE_TO_SELF, 0.5f, Animation.RELATIVE_TO_SELF,
+				0.5f));
+		showAnimation.setDuration(200);
+	}
 
 }
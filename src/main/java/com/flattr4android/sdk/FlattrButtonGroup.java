@@ -0,0 +1,488 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.MotionEvent;
+import android.view.View;
+
+/**
+ * A single view showing many Flattr buttons, laid out in a grid. It looks
+ * and behaves like as many <code>FlattrButton</code> views (same artwork,
+ * same status logic, a click on a button displays its thing), but a screen
+ * full of buttons is measured, laid out and drawn as one view, and the
+ * things of all its buttons are loaded together.
+ * <p>
+ * There is no animation when the state of a button changes. Like the other
+ * methods of a view, the methods must be called on the UI thread.
+ * 
+ * @author Philippe Bernard
+ */
+public class FlattrButtonGroup extends View {
+
+	private static final String LOADING_TEXT = "?";
+	private static final String ERROR_TEXT = "!";
+
+	private String style = FlattrButton.BUTTON_STYLE_HORIZONTAL;
+	private ButtonArtwork artwork;
+	private int columnCount = 1;
+	// Space between two buttons, in pixels
+	private int spacing = 0;
+
+	private List<String> thingIds = Collections.emptyList();
+	// Displayed state of each button, in the order of the thing Ids
+	private ButtonState[] slots = new ButtonState[0];
+	// Things being loaded, and the priority they were requested with
+	private final Set<String> loadingIds = new HashSet<String>();
+	private int loadPriority;
+	// Things registered to the refresh scheduler
+	private final List<String> refreshedIds = new ArrayList<String>();
+	private int generation = 0;
+	private LoadCallback loadCallback = new LoadCallback(generation);
+	private boolean attached = false;
+	private boolean windowVisible = false;
+	// Button under the finger, -1 if none
+	private int pressedSlot = -1;
+
+	public FlattrButtonGroup(Context context) throws FlattrSDKException {
+		super(context);
+
+		FlattrSDK.initThingCache(context);
+		initResources();
+	}
+
+	public FlattrButtonGroup(Context context, AttributeSet attrs)
+			throws FlattrSDKException {
+		super(context, attrs);
+
+		FlattrSDK.initThingCache(context);
+		String style = attrs.getAttributeValue(
+				FlattrSDK.FLATTR_SDK_XML_NAMESPACE, "button_style");
+		if (style != null) {
+			setButtonStyle(style);
+		}
+		String columns = attrs.getAttributeValue(
+				FlattrSDK.FLATTR_SDK_XML_NAMESPACE, "columns");
+		if (columns != null) {
+			setColumnCount(Integer.parseInt(columns));
+		}
+		initResources();
+	}
+
+	private void initResources() throws FlattrSDKException {
+		// Artwork is shared with the buttons of the same style
+		artwork = ButtonArtwork.get(getResources(), style);
+	}
+
+	/**
+	 * Set the things of the buttons, from left to right then top to bottom.
+	 */
+	public void setThingIds(List<String> newThingIds) {
+		releaseThings();
+		thingIds = new ArrayList<String>(newThingIds);
+		generation++;
+		loadCallback = new LoadCallback(generation);
+
+		ThingCache cache = FlattrSDK.getThingCache();
+		slots = new ButtonState[thingIds.size()];
+		for (int i = 0; i < slots.length; i++) {
+			slots[i] = ButtonState.UNBOUND.bind(thingIds.get(i));
+			ThingState cachedState = (thingIds.get(i) != null) ? cache
+					.getLatest(thingIds.get(i)) : null;
+			if (cachedState != null) {
+				slots[i] = slots[i].withThing(cachedState, !cache
+						.isFresh(cachedState), true);
+			}
+		}
+		if (attached) {
+			watchThings();
+			loadThings();
+		}
+		updateRefreshRegistration();
+		requestLayout();
+		invalidate();
+	}
+
+	public List<String> getThingIds() {
+		return Collections.unmodifiableList(thingIds);
+	}
+
+	/**
+	 * @see FlattrButton#BUTTON_STYLE_HORIZONTAL
+	 * @see FlattrButton#BUTTON_STYLE_VERTICAL
+	 * @see FlattrButton#BUTTON_STYLE_MINI
+	 */
+	public void setButtonStyle(String style) throws FlattrSDKException {
+		if ((!style.equals(FlattrButton.BUTTON_STYLE_HORIZONTAL))
+				&& (!style.equals(FlattrButton.BUTTON_STYLE_VERTICAL))
+				&& !(style.equals(FlattrButton.BUTTON_STYLE_MINI))) {
+			throw new IllegalArgumentException("Invalid style '" + style
+					+ "'");
+		}
+		this.style = style;
+		initResources();
+		requestLayout();
+		invalidate();
+	}
+
+	public String getButtonStyle() {
+		return style;
+	}
+
+	public void setColumnCount(int columnCount) {
+		if (columnCount <= 0) {
+			throw new IllegalArgumentException("Invalid column count "
+					+ columnCount);
+		}
+		this.columnCount = columnCount;
+		requestLayout();
+		invalidate();
+	}
+
+	public int getColumnCount() {
+		return columnCount;
+	}
+
+	/**
+	 * Set the space between two buttons, in pixels.
+	 */
+	public void setSpacing(int spacing) {
+		this.spacing = spacing;
+		requestLayout();
+		invalidate();
+	}
+
+	public int getSpacing() {
+		return spacing;
+	}
+
+	/**
+	 * @return The status displayed by a button, given its position.
+	 */
+	public ThingStatus getThingStatus(int position) {
+		return slots[position].getDisplayedStatus();
+	}
+
+	/**
+	 * Load the things not known yet, all at once so they share requests.
+	 */
+	private void loadThings() {
+		ThingCache cache = FlattrSDK.getThingCache();
+		for (ButtonState slot : slots) {
+			String thingId = slot.getThingId();
+			if ((thingId == null) || loadingIds.contains(thingId)) {
+				continue;
+			}
+			if (slot.isSet() && !slot.isStale()) {
+				ThingState latest = cache.getLatest(thingId);
+				if ((latest != null) && cache.isFresh(latest)) {
+					continue;
+				}
+			}
+			if (loadingIds.isEmpty()) {
+				loadPriority = getLoadPriority();
+			}
+			loadingIds.add(thingId);
+			ThingLoader.load(getContext().getContentResolver(), null,
+					thingId, loadPriority, loadCallback);
+		}
+	}
+
+	/**
+	 * Raise the priority of the pending loads if the group became visible
+	 * since they were requested.
+	 */
+	private void updateLoadPriority() {
+		if (loadingIds.isEmpty()) {
+			return;
+		}
+		int priority = getLoadPriority();
+		if (priority < loadPriority) {
+			loadPriority = priority;
+			for (String thingId : loadingIds) {
+				ThingLoader.load(getContext().getContentResolver(), null,
+						thingId, priority, loadCallback);
+			}
+		}
+	}
+
+	private int getLoadPriority() {
+		return isShown() ? LoaderExecutor.PRIORITY_VISIBLE
+				: LoaderExecutor.PRIORITY_ATTACHED;
+	}
+
+	private void watchThings() {
+		// Follow the changes made in the Flattr application
+		ThingRepository repository = FlattrSDK.getThingRepository(getContext());
+		for (String thingId : getDistinctThingIds()) {
+			repository.watch(thingId, loadCallback);
+		}
+	}
+
+	/**
+	 * Stop loading and watching the current things.
+	 */
+	private void releaseThings() {
+		for (String thingId : loadingIds) {
+			ThingLoader.cancel(thingId, loadCallback);
+		}
+		loadingIds.clear();
+		if (attached) {
+			ThingRepository repository = FlattrSDK
+					.getThingRepository(getContext());
+			for (String thingId : getDistinctThingIds()) {
+				repository.unwatch(thingId, loadCallback);
+			}
+		}
+	}
+
+	private Set<String> getDistinctThingIds() {
+		Set<String> ids = new LinkedHashSet<String>(thingIds);
+		ids.remove(null);
+		return ids;
+	}
+
+	/**
+	 * Refresh the things periodically while somebody can see them.
+	 */
+	private void updateRefreshRegistration() {
+		for (String thingId : refreshedIds) {
+			RefreshScheduler.unregister(thingId);
+		}
+		refreshedIds.clear();
+		if (!attached || !windowVisible) {
+			return;
+		}
+		ThingCache cache = FlattrSDK.getThingCache();
+		for (String thingId : getDistinctThingIds()) {
+			ThingState latest = cache.getLatest(thingId);
+			RefreshScheduler.register(getContext().getContentResolver(),
+					null, thingId, (latest != null) ? latest.getClicks() : -1);
+			refreshedIds.add(thingId);
+		}
+	}
+
+	@Override
+	protected void onAttachedToWindow() {
+		super.onAttachedToWindow();
+		attached = true;
+		watchThings();
+		loadThings();
+		windowVisible = (getWindowVisibility() == VISIBLE);
+		updateRefreshRegistration();
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		// Nobody will see the results
+		releaseThings();
+		attached = false;
+		updateRefreshRegistration();
+	}
+
+	@Override
+	protected void onWindowVisibilityChanged(int visibility) {
+		super.onWindowVisibilityChanged(visibility);
+		windowVisible = (visibility == VISIBLE);
+		updateRefreshRegistration();
+	}
+
+	@Override
+	public void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+		int rowCount = (slots.length + columnCount - 1) / columnCount;
+		int columns = Math.min(slots.length, columnCount);
+		int width = Math.max(columns * (artwork.getWidth() + spacing)
+				- spacing, 0);
+		int height = Math.max(rowCount * (artwork.getHeight() + spacing)
+				- spacing, 0);
+		setMeasuredDimension(resolveSize(width, widthMeasureSpec),
+				resolveSize(height, heightMeasureSpec));
+	}
+
+	@Override
+	public void onDraw(Canvas canvas) {
+		// No allocation here: this runs for every frame
+		FlattrSDK.getMetrics().increment(MetricsListener.Counter.DRAW, 1);
+		int buttonWidth = artwork.getWidth();
+		int buttonHeight = artwork.getHeight();
+		for (int i = 0; i < slots.length; i++) {
+			int left = getSlotLeft(i);
+			int top = getSlotTop(i);
+			if (canvas.quickReject(left, top, left + buttonWidth, top
+					+ buttonHeight, Canvas.EdgeType.BW)) {
+				// Scrolled out
+				continue;
+			}
+			ButtonState slot = slots[i];
+			canvas.save();
+			canvas.translate(left, top);
+			artwork.draw(canvas, slot.getDisplayedStatus());
+			if (slot.isSet()) {
+				artwork.drawClicks(canvas, slot.getClicksText());
+			} else if (slot.getError() != null) {
+				artwork.drawClicks(canvas, ERROR_TEXT);
+			} else {
+				artwork.drawClicks(canvas, LOADING_TEXT);
+			}
+			canvas.restore();
+		}
+		updateLoadPriority();
+	}
+
+	@Override
+	public boolean onTouchEvent(MotionEvent event) {
+		switch (event.getAction()) {
+		case MotionEvent.ACTION_DOWN:
+			pressedSlot = getSlotAt(event.getX(), event.getY());
+			return pressedSlot >= 0;
+		case MotionEvent.ACTION_UP:
+			int slot = getSlotAt(event.getX(), event.getY());
+			if ((slot >= 0) && (slot == pressedSlot)) {
+				displayThing(slots[slot].getThingId());
+			}
+			pressedSlot = -1;
+			return true;
+		case MotionEvent.ACTION_CANCEL:
+			pressedSlot = -1;
+			return true;
+		default:
+			return pressedSlot >= 0;
+		}
+	}
+
+	private void displayThing(String thingId) {
+		if (thingId == null) {
+			return;
+		}
+		try {
+			FlattrSDK.displayThing(getContext(), thingId);
+		} catch (FlattrSDKException e) {
+			Log.d(FlattrSDK.LOG_TAG, "Error while displaying thing "
+					+ thingId, e);
+		}
+	}
+
+	/**
+	 * @return The position of the button at the given coordinates, or -1 if
+	 *         there is none (spacing, empty cell...).
+	 */
+	private int getSlotAt(float x, float y) {
+		if ((x < 0) || (y < 0)) {
+			return -1;
+		}
+		int column = (int) x / (artwork.getWidth() + spacing);
+		int row = (int) y / (artwork.getHeight() + spacing);
+		if ((column >= columnCount)
+				|| ((int) x - column * (artwork.getWidth() + spacing) >= artwork
+						.getWidth())
+				|| ((int) y - row * (artwork.getHeight() + spacing) >= artwork
+						.getHeight())) {
+			return -1;
+		}
+		int slot = row * columnCount + column;
+		return (slot < slots.length) ? slot : -1;
+	}
+
+	private int getSlotLeft(int slot) {
+		return (slot % columnCount) * (artwork.getWidth() + spacing);
+	}
+
+	private int getSlotTop(int slot) {
+		return (slot / columnCount) * (artwork.getHeight() + spacing);
+	}
+
+	/**
+	 * Callback of a set of things. Called on the UI thread.
+	 */
+	private class LoadCallback implements ThingLoader.Callback {
+
+		private final int callbackGeneration;
+
+		LoadCallback(int callbackGeneration) {
+			this.callbackGeneration = callbackGeneration;
+		}
+
+		public void onThingLoaded(ThingState thingState) {
+			if (callbackGeneration != generation) {
+				// Things changed in the meantime
+				return;
+			}
+			String thingId = thingState.getThingId();
+			loadingIds.remove(thingId);
+			boolean changed = false;
+			for (int i = 0; i < slots.length; i++) {
+				ButtonState slot = slots[i];
+				if (!thingId.equals(slot.getThingId())) {
+					continue;
+				}
+				// Typically after a refresh, the button may already display
+				// this state: no need to draw it again
+				changed |= !slot.showsSameThing(thingState);
+				slots[i] = slot.withThing(thingState, false, true);
+			}
+			if (changed) {
+				invalidate();
+			}
+		}
+
+		public void onLastKnownState(ThingState thingState) {
+			String thingId = thingState.getThingId();
+			if ((callbackGeneration != generation)
+					|| !loadingIds.contains(thingId)) {
+				return;
+			}
+			// Displayed while the thing is loaded
+			boolean changed = false;
+			for (int i = 0; i < slots.length; i++) {
+				ButtonState slot = slots[i];
+				if (thingId.equals(slot.getThingId()) && !slot.isSet()) {
+					slots[i] = slot.withThing(thingState, true, true);
+					changed = true;
+				}
+			}
+			if (changed) {
+				invalidate();
+			}
+		}
+
+		public void onThingLoadFailed(String thingId, Exception error) {
+			if (callbackGeneration != generation) {
+				return;
+			}
+			Log.d(FlattrSDK.LOG_TAG, "Error while loading thing " + thingId,
+					error);
+			loadingIds.remove(thingId);
+			// Loaded again with the next refresh
+			for (int i = 0; i < slots.length; i++) {
+				ButtonState slot = slots[i];
+				if (thingId.equals(slot.getThingId())) {
+					slots[i] = slot.withError(error, true);
+				}
+			}
+			invalidate();
+		}
+	}
+}
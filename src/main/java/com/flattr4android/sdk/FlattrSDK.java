@@ -14,10 +14,16 @@
  */
 package com.flattr4android.sdk;
 
+import java.io.File;
+import java.util.Collection;
+
+import org.shredzone.flattr4j.FlattrService;
+import org.shredzone.flattr4j.OpenService;
 import org.shredzone.flattr4j.model.Thing;
 
 import android.app.AlertDialog;
 import android.content.ActivityNotFoundException;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
@@ -46,6 +52,21 @@ public class FlattrSDK {
 
 	public static final String LOG_TAG = "FlattrSdk";
 
+	private static final String SNAPSHOT_FILE_NAME = "flattr_things.dat";
+	private static final String ACTIONS_FILE_NAME = "flattr_actions.dat";
+
+	private static final ThingCache thingCache = new ThingCache(
+			ThingCache.DEFAULT_MAX_SIZE, ThingCache.DEFAULT_TTL);
+	private static volatile MetricsListener metrics = MetricsListener.NONE;
+	private static volatile boolean compositeRendering = true;
+	private static final LoadingPolicy loadingPolicy = new LoadingPolicy();
+	// Known once the thing cache is initialized
+	private static Context applicationContext;
+	private static volatile OpenService openService;
+	private static FlattrActionQueue actionQueue;
+	private static ThingRepository thingRepository;
+	private static final UserStatusIndex userStatusIndex = new UserStatusIndex();
+
 	/**
 	 * Present a Flattr thing to the user. This method tries to: - Invoke the
 	 * Flattr application, if it's present on the phone. - Else, display a
@@ -111,8 +132,259 @@ public class FlattrSDK {
 		alert.show();
 	}
 
+	/**
+	 * Drop all things cached by the SDK, in memory and on disk. Buttons will
+	 * load their thing again the next time they need it.
+	 */
+	public static void clearThingCache() {
+		thingCache.clear();
+	}
+
+	/**
+	 * Keep up to <code>capacity</code> things in memory beyond the
+	 * {@value ThingCache#DEFAULT_MAX_SIZE} most recently used ones, in a
+	 * compact form of less than 35 bytes per thing. Useful to applications
+	 * which show thousands of things, such as podcast and feed readers. Only
+	 * things with a 32 characters hexadecimal Id are kept this way. Disabled
+	 * by default, a capacity of 0 disables it again.
+	 */
+	public static void setCompactCacheCapacity(int capacity) {
+		thingCache.setCompactCapacity(capacity);
+	}
+
+	/**
+	 * Load things in the background, so the buttons bound to them later are
+	 * displayed with their final state right away. Typically called with the
+	 * things of the rows about to be scrolled in (see
+	 * {@link PrefetchScrollListener}). Things already known are skipped.
+	 */
+	public static void prefetch(Context context, Collection<String> thingIds) {
+		initThingCache(context);
+		ContentResolver contentResolver = context.getContentResolver();
+		for (String thingId : thingIds) {
+			if (thingId == null) {
+				continue;
+			}
+			ThingState state = thingCache.getLatest(thingId);
+			if ((state == null) || !thingCache.isFresh(state)) {
+				ThingLoader.prefetch(contentResolver, null, thingId);
+			}
+		}
+	}
+
+	/**
+	 * Set the REST client used by the buttons which were not given their own
+	 * client (see {@link FlattrButton#setFlattrRestClient(FlattrService)}).
+	 * Call it once, before the first button is displayed. By default, a
+	 * client with the application credentials is created on first use.
+	 */
+	public static void setOpenService(OpenService service) {
+		openService = service;
+	}
+
+	/**
+	 * @return The REST client shared by the buttons. It is created on first
+	 *         call, which happens on a loader thread, not during the layout
+	 *         inflation.
+	 */
+	public static OpenService getOpenService() {
+		OpenService service = openService;
+		if (service == null) {
+			synchronized (FlattrSDK.class) {
+				service = openService;
+				if (service == null) {
+					service = CachingFlattrConnector.createFlattrService();
+					openService = service;
+				}
+			}
+		}
+		return service;
+	}
+
+	/**
+	 * Release the memory the SDK can do without, such as the button artwork
+	 * not currently displayed. Call it from the
+	 * <code>onLowMemory</code> (or <code>onTrimMemory</code>) method of your
+	 * <code>Application</code>.
+	 */
+	public static void onLowMemory() {
+		ButtonArtwork.release();
+	}
+
+	/**
+	 * Set the listener receiving the SDK metrics, or <code>null</code> to stop
+	 * collecting them.
+	 */
+	public static void setMetricsListener(MetricsListener listener) {
+		metrics = (listener != null) ? listener : MetricsListener.NONE;
+	}
+
+	/**
+	 * Get the queue of the flattr actions made by the application. Actions
+	 * recorded in a previous run and not sent yet are sent as soon as a
+	 * <code>FlattrService</code> is set.
+	 */
+	public static synchronized FlattrActionQueue getActionQueue(
+			Context context) {
+		if (actionQueue == null) {
+			initThingCache(context);
+			actionQueue = new FlattrActionQueue(
+					context.getApplicationContext(), new File(
+							context.getFilesDir(), ACTIONS_FILE_NAME));
+		}
+		return actionQueue;
+	}
+
+	/**
+	 * Get the repository of things, to observe things outside of a
+	 * <code>FlattrButton</code>.
+	 */
+	public static synchronized ThingRepository getThingRepository(
+			Context context) {
+		if (thingRepository == null) {
+			initThingCache(context);
+			thingRepository = new ThingRepository(context
+					.getApplicationContext().getContentResolver());
+		}
+		return thingRepository;
+	}
+
+	static ThingState applyPendingActions(ThingState state) {
+		FlattrActionQueue queue;
+		synchronized (FlattrSDK.class) {
+			queue = actionQueue;
+		}
+		return (queue != null) ? queue.applyPending(state) : state;
+	}
+
+	/**
+	 * Draw each button as a single bitmap, composited once per style and
+	 * status, rather than drawing its parts on each frame. Enabled by
+	 * default: it costs a few kilobytes per style and status displayed. Only
+	 * the frames drawn after the call are affected.
+	 */
+	public static void setCompositeRendering(boolean enabled) {
+		compositeRendering = enabled;
+	}
+
+	static boolean isCompositeRendering() {
+		return compositeRendering;
+	}
+
+	static MetricsListener getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Attach the persistent snapshot to the thing cache, if not done yet.
+	 */
+	static synchronized void initThingCache(Context context) {
+		if (!thingCache.hasSnapshotStore()) {
+			final ThingSnapshotStore store = new ThingSnapshotStore(new File(
+					context.getCacheDir(), SNAPSHOT_FILE_NAME),
+					ThingSnapshotStore.DEFAULT_MAX_SIZE);
+			thingCache.setSnapshotStore(store);
+			// Not on the UI thread, but before the loads of the first buttons
+			ThingLoader.runInBackground(new Runnable() {
+				public void run() {
+					store.load();
+					ThingLoader.publishSnapshot();
+				}
+			}, LoaderExecutor.PRIORITY_VISIBLE);
+		}
+		if (applicationContext == null) {
+			applicationContext = context.getApplicationContext();
+		}
+		if (!loadingPolicy.hasConnectivitySource()) {
+			loadingPolicy.setConnectivitySource(new AndroidConnectivitySource(
+					applicationContext));
+		}
+	}
+
+	/**
+	 * Set the source of the network conditions, which decide when and how
+	 * things are loaded (see {@link ConnectivitySource}), or
+	 * <code>null</code> to use the <code>ConnectivityManager</code> again.
+	 */
+	public static synchronized void setConnectivitySource(
+			ConnectivitySource source) {
+		if ((source == null) && (applicationContext != null)) {
+			source = new AndroidConnectivitySource(applicationContext);
+		}
+		loadingPolicy.setConnectivitySource(source);
+	}
+
+	static LoadingPolicy getLoadingPolicy() {
+		return loadingPolicy;
+	}
+
+	static ThingCache getThingCache() {
+		return thingCache;
+	}
+
+	/**
+	 * Set the REST client acting on behalf of the user, or <code>null</code>
+	 * when the user logs out. The things flattred and owned by the user are
+	 * then fetched in bulk, and refreshed from time to time, so the buttons
+	 * show their real status without a request per thing.
+	 */
+	public static void setUserFlattrService(FlattrService service) {
+		userStatusIndex.setFlattrService(service);
+		refreshUserStatus();
+	}
+
+	/**
+	 * Status of a thing for the current user. Constant time, no request is
+	 * made.
+	 */
 	public static ThingStatus getStatus(Thing thing) {
-		// TODO: Implement me!
-		return ThingStatus.DEFAULT;
+		ThingStatus status = getUserStatus(thing.getThingId());
+		if (status != ThingStatus.DEFAULT) {
+			return status;
+		}
+		if (thing.getUserId() != null
+				&& thing.getUserId().equals(userStatusIndex.getUserId())) {
+			// Created since the last refresh of the index
+			return ThingStatus.OWNER;
+		}
+		// Only known when the thing was loaded with the user credentials
+		return thing.isFlattred() ? ThingStatus.FLATTRED : ThingStatus.DEFAULT;
+	}
+
+	/**
+	 * @return The status of the thing according to the user status index,
+	 *         <code>DEFAULT</code> if the index is not available.
+	 */
+	static ThingStatus getUserStatus(String thingId) {
+		if (userStatusIndex.needsRefresh(System.currentTimeMillis())) {
+			refreshUserStatus();
+		}
+		ThingStatus status = userStatusIndex.getStatus(thingId);
+		return (status != null) ? status : ThingStatus.DEFAULT;
+	}
+
+	/**
+	 * @return <code>true</code> if the status of the things is known even
+	 *         when they are loaded without the user credentials.
+	 */
+	static boolean isUserStatusKnown() {
+		return userStatusIndex.isLoaded();
+	}
+
+	static UserStatusIndex getUserStatusIndex() {
+		return userStatusIndex;
+	}
+
+	private static void refreshUserStatus() {
+		ThingLoader.runInBackground(new Runnable() {
+			public void run() {
+				try {
+					ThingLoader.updateStatuses(userStatusIndex.refresh());
+				} catch (Exception e) {
+					Log.d(LOG_TAG, "Error while fetching the user things "
+							+ "and flattrs", e);
+				}
+			}
+		});
 	}
 }
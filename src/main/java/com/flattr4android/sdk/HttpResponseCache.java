@@ -0,0 +1,213 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Revalidation cache of the Rest API responses, plugged in an
+ * <code>HttpClient</code> as a pair of interceptors. The body of a
+ * <code>GET</code> response carrying an <code>ETag</code> or a
+ * <code>Last-Modified</code> header is kept (still compressed, if it was),
+ * and the next identical request is made conditional. A
+ * <code>304 Not Modified</code> answer is then turned into the cached
+ * <code>200</code> response, so the caller does not see the difference.
+ * 
+ * @author Philippe Bernard
+ */
+class HttpResponseCache implements HttpRequestInterceptor,
+		HttpResponseInterceptor {
+
+	static final int DEFAULT_MAX_ENTRIES = 100;
+	static final int MAX_BODY_SIZE = 64 * 1024;
+
+	static final String CACHE_KEY_ATTRIBUTE = "com.flattr4android.sdk.cache-key";
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private static class CachedResponse {
+		final String etag;
+		final String lastModified;
+		final byte[] body;
+		final String contentType;
+		final String contentEncoding;
+
+		CachedResponse(String etag, String lastModified, byte[] body,
+				String contentType, String contentEncoding) {
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.body = body;
+			this.contentType = contentType;
+			this.contentEncoding = contentEncoding;
+		}
+
+		HttpEntity toEntity() {
+			ByteArrayEntity entity = new ByteArrayEntity(body);
+			entity.setContentType(contentType);
+			entity.setContentEncoding(contentEncoding);
+			return entity;
+		}
+	}
+
+	private final Map<String, CachedResponse> responses;
+
+	HttpResponseCache(final int maxEntries) {
+		responses = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<String, CachedResponse> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	public void process(HttpRequest request, HttpContext context)
+			throws HttpException, IOException {
+		if (!"GET".equals(request.getRequestLine().getMethod())) {
+			return;
+		}
+		String key = getKey(request, context);
+		context.setAttribute(CACHE_KEY_ATTRIBUTE, key);
+		CachedResponse cached = get(key);
+		if (cached == null) {
+			return;
+		}
+		if (cached.etag != null) {
+			request.setHeader("If-None-Match", cached.etag);
+		}
+		if (cached.lastModified != null) {
+			request.setHeader("If-Modified-Since", cached.lastModified);
+		}
+	}
+
+	public void process(HttpResponse response, HttpContext context)
+			throws HttpException, IOException {
+		String key = (String) context.getAttribute(CACHE_KEY_ATTRIBUTE);
+		if (key == null) {
+			return;
+		}
+		int status = response.getStatusLine().getStatusCode();
+		if (status == HttpStatus.SC_NOT_MODIFIED) {
+			CachedResponse cached = get(key);
+			if (cached != null) {
+				FlattrSDK.getMetrics().increment(
+						MetricsListener.Counter.REST_NOT_MODIFIED, 1);
+				response.setStatusLine(response.getStatusLine()
+						.getProtocolVersion(), HttpStatus.SC_OK, "OK");
+				response.setEntity(cached.toEntity());
+			}
+		} else if (status == HttpStatus.SC_OK) {
+			Header etag = response.getFirstHeader("ETag");
+			Header lastModified = response.getFirstHeader("Last-Modified");
+			HttpEntity entity = response.getEntity();
+			if (((etag == null) && (lastModified == null)) || (entity == null)
+					|| (entity.getContentLength() > MAX_BODY_SIZE)) {
+				remove(key);
+				return;
+			}
+			CachedResponse cached = new CachedResponse(getValue(etag),
+					getValue(lastModified), EntityUtils.toByteArray(entity),
+					getValue(entity.getContentType()),
+					getValue(entity.getContentEncoding()));
+			// The original entity is consumed: replace it
+			response.setEntity(cached.toEntity());
+			if (cached.body.length <= MAX_BODY_SIZE) {
+				put(key, cached);
+			}
+		}
+	}
+
+	/**
+	 * Responses depend on the credentials: they are part of the key, hashed
+	 * so the cache does not keep the access token in memory.
+	 */
+	private static String getKey(HttpRequest request, HttpContext context) {
+		StringBuilder key = new StringBuilder();
+		HttpHost host = (HttpHost) context
+				.getAttribute(ExecutionContext.HTTP_TARGET_HOST);
+		if (host != null) {
+			key.append(host.toURI());
+		}
+		key.append(request.getRequestLine().getUri());
+		Header authorization = request.getFirstHeader("Authorization");
+		if (authorization != null) {
+			key.append('|').append(hash(authorization.getValue()));
+		}
+		return key.toString();
+	}
+
+	/**
+	 * @return The SHA-256 digest of a value, in hexadecimal.
+	 */
+	private static String hash(String value) {
+		byte[] digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256").digest(
+					value.getBytes("UTF-8"));
+		} catch (NoSuchAlgorithmException e) {
+			// Supported by every platform
+			throw new IllegalStateException(e);
+		} catch (UnsupportedEncodingException e) {
+			// Supported by every platform
+			throw new IllegalStateException(e);
+		}
+		StringBuilder hex = new StringBuilder(2 * digest.length);
+		for (byte b : digest) {
+			hex.append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+		}
+		return hex.toString();
+	}
+
+	private static String getValue(Header header) {
+		return (header != null) ? header.getValue() : null;
+	}
+
+	private synchronized CachedResponse get(String key) {
+		return responses.get(key);
+	}
+
+	private synchronized void put(String key, CachedResponse response) {
+		responses.put(key, response);
+	}
+
+	private synchronized void remove(String key) {
+		responses.remove(key);
+	}
+
+	synchronized void clear() {
+		responses.clear();
+	}
+}
@@ -0,0 +1,104 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry of the loads in progress, keyed by thing Id. The first caller
+ * asking for a thing starts the fetch, the following ones only wait for its
+ * result.
+ * 
+ * @author Philippe Bernard
+ */
+class InFlightRegistry<C> {
+
+	private final Map<String, List<C>> waiters = new HashMap<String, List<C>>();
+
+	/**
+	 * Register a callback waiting for a thing.
+	 * 
+	 * @return <code>true</code> if no load was in progress for this thing, in
+	 *         which case the caller is in charge of starting it.
+	 */
+	synchronized boolean join(String thingId, C callback) {
+		List<C> callbacks = waiters.get(thingId);
+		if (callbacks != null) {
+			// A caller may join again to raise the priority of its load
+			if (!callbacks.contains(callback)) {
+				callbacks.add(callback);
+			}
+			return false;
+		}
+		callbacks = new ArrayList<C>(1);
+		callbacks.add(callback);
+		waiters.put(thingId, callbacks);
+		return true;
+	}
+
+	/**
+	 * Mark the load of a thing as done.
+	 * 
+	 * @return The callbacks which were waiting for the thing, never
+	 *         <code>null</code>.
+	 */
+	synchronized List<C> complete(String thingId) {
+		List<C> callbacks = waiters.remove(thingId);
+		if (callbacks == null) {
+			callbacks = new ArrayList<C>(0);
+		}
+		return callbacks;
+	}
+
+	/**
+	 * Unregister a callback which is no longer interested in a thing.
+	 * 
+	 * @return <code>true</code> if nobody is waiting for the thing anymore, in
+	 *         which case its load is no longer in progress.
+	 */
+	synchronized boolean leave(String thingId, C callback) {
+		List<C> callbacks = waiters.get(thingId);
+		if (callbacks == null) {
+			return false;
+		}
+		callbacks.remove(callback);
+		if (callbacks.isEmpty()) {
+			waiters.remove(thingId);
+			return true;
+		}
+		return false;
+	}
+
+	synchronized boolean isInFlight(String thingId) {
+		return waiters.containsKey(thingId);
+	}
+
+	/**
+	 * @return A copy of the callbacks waiting for a thing, never
+	 *         <code>null</code>.
+	 */
+	synchronized List<C> get(String thingId) {
+		List<C> callbacks = waiters.get(thingId);
+		return (callbacks != null) ? new ArrayList<C>(callbacks)
+				: new ArrayList<C>(0);
+	}
+
+	synchronized List<String> thingIds() {
+		return new ArrayList<String>(waiters.keySet());
+	}
+}
@@ -0,0 +1,101 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.os.Process;
+
+/**
+ * Bounded executor owned by the SDK, so loading things does not compete with
+ * the other background tasks of the application. Tasks with the lowest
+ * priority value run first; tasks of equal priority run in submission order.
+ * 
+ * @author Philippe Bernard
+ */
+class LoaderExecutor {
+
+	/** Load for a button attached to a visible window */
+	static final int PRIORITY_VISIBLE = 0;
+	/** Load for a button attached to a window, which may not be visible */
+	static final int PRIORITY_ATTACHED = 1;
+	/** Load nobody is looking at yet */
+	static final int PRIORITY_BACKGROUND = 2;
+
+	private final AtomicLong sequence = new AtomicLong();
+	private final ThreadPoolExecutor executor;
+
+	LoaderExecutor(int threadCount) {
+		executor = new ThreadPoolExecutor(threadCount, threadCount, 1,
+				TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(final Runnable r) {
+						Thread thread = new Thread(new Runnable() {
+							public void run() {
+								Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+								r.run();
+							}
+						}, "FlattrSdkLoader-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	Future<Void> execute(Runnable task, int priority) {
+		Task future = new Task(task, priority, sequence.getAndIncrement());
+		executor.execute(future);
+		return future;
+	}
+
+	/**
+	 * Cancel a task. A queued task is removed from the queue, a running task
+	 * is interrupted.
+	 */
+	void cancel(Future<Void> future) {
+		future.cancel(true);
+		executor.remove((Runnable) future);
+	}
+
+	private static class Task extends FutureTask<Void> implements
+			Comparable<Task> {
+
+		private final int priority;
+		private final long sequence;
+
+		Task(Runnable task, int priority, long sequence) {
+			super(task, null);
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+
+		public int compareTo(Task other) {
+			if (priority != other.priority) {
+				return (priority < other.priority) ? -1 : 1;
+			}
+			return (sequence < other.sequence) ? -1
+					: ((sequence == other.sequence) ? 0 : 1);
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+/**
+ * When and how things are loaded, given the network conditions:
+ * <ul>
+ * <li>On a metered network, the loads of things nobody can see wait for the
+ * radio to wake up for another reason (a visible button, for example), or
+ * at most {@link #METERED_DEFER_DELAY}. Requests go out in bursts while the
+ * radio is active, rather than waking it up one by one.</li>
+ * <li>On a slow link, things known from a previous load, even not fresh, are
+ * preferred to a request. Without connection, they are used whatever their
+ * age.</li>
+ * </ul>
+ * Times are given by the caller, so the policy does not depend on a clock.
+ * 
+ * @author Philippe Bernard
+ */
+class LoadingPolicy {
+
+	/**
+	 * Time the radio remains active after a request, in milliseconds.
+	 */
+	static final long RADIO_TAIL = 10 * 1000;
+	/**
+	 * Maximum time a load not visible waits for a burst, in milliseconds.
+	 */
+	static final long METERED_DEFER_DELAY = 30 * 1000;
+	/**
+	 * Maximum age of a thing used instead of a request on a slow link, in
+	 * milliseconds.
+	 */
+	static final long MAX_SLOW_LINK_AGE = 24 * 60 * 60 * 1000;
+
+	// Used until the SDK gets a context, and in environments without network
+	// information: loads are never delayed
+	private static final ConnectivitySource FAST_NETWORK = new ConnectivitySource() {
+		public boolean isConnected() {
+			return true;
+		}
+
+		public boolean isMetered() {
+			return false;
+		}
+
+		public boolean isSlow() {
+			return false;
+		}
+	};
+
+	private volatile ConnectivitySource source = FAST_NETWORK;
+	private volatile long lastNetworkActivity = Long.MIN_VALUE / 2;
+
+	/**
+	 * @param source
+	 *            The source of connectivity, or <code>null</code> to assume a
+	 *            fast and free network.
+	 */
+	void setConnectivitySource(ConnectivitySource source) {
+		this.source = (source != null) ? source : FAST_NETWORK;
+	}
+
+	boolean hasConnectivitySource() {
+		return source != FAST_NETWORK;
+	}
+
+	/**
+	 * @return <code>true</code> if a load of the given priority must be sent
+	 *         now, <code>false</code> if it can wait for a burst.
+	 * @see LoaderExecutor#PRIORITY_VISIBLE
+	 */
+	boolean isUrgent(int priority, long now) {
+		if (priority == LoaderExecutor.PRIORITY_VISIBLE) {
+			return true;
+		}
+		return !source.isMetered() || isRadioActive(now);
+	}
+
+	/**
+	 * Record a request, which wakes the radio up.
+	 */
+	void onNetworkActivity(long now) {
+		lastNetworkActivity = now;
+	}
+
+	boolean isRadioActive(long now) {
+		return (now - lastNetworkActivity) < RADIO_TAIL;
+	}
+
+	/**
+	 * @return The maximum age of the things known from a previous load to use
+	 *         rather than sending a request, <code>-1</code> if requests are
+	 *         preferred.
+	 */
+	long getMaxLocalDataAge() {
+		ConnectivitySource current = source;
+		if (!current.isConnected()) {
+			return Long.MAX_VALUE;
+		}
+		return current.isSlow() ? MAX_SLOW_LINK_AGE : -1;
+	}
+
+	boolean isConnected() {
+		return source.isConnected();
+	}
+}
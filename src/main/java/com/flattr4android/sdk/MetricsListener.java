@@ -0,0 +1,75 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+/**
+ * Receive the SDK internal metrics, for example to forward them to your own
+ * telemetry. Register an implementation with
+ * {@link FlattrSDK#setMetricsListener(MetricsListener)}.
+ * <p>
+ * Methods are invoked from the UI thread as well as from the SDK loader
+ * threads, sometimes once per frame: they must be thread-safe and fast.
+ * 
+ * @author Philippe Bernard
+ */
+public interface MetricsListener {
+
+	enum Counter {
+		/** A button was bound to a thing found in the cache */
+		CACHE_HIT,
+		/** A button was bound to a thing not found in the cache */
+		CACHE_MISS,
+		/** A thing was obtained from the Flattr application */
+		PROVIDER_HIT,
+		/** A REST call was made to load things */
+		REST_FETCH,
+		/** A REST call was answered from the response cache (304) */
+		REST_NOT_MODIFIED,
+		/** A thing could not be loaded */
+		LOAD_ERROR,
+		/** A load waits for a burst of requests (metered network) */
+		LOAD_DEFERRED,
+		/**
+		 * A thing known from a previous load was used rather than loading it
+		 * (slow link or no connection)
+		 */
+		LOCAL_FALLBACK,
+		/** A button was drawn */
+		DRAW
+	}
+
+	enum Timer {
+		/** Time spent loading a batch of things */
+		LOAD
+	}
+
+	/**
+	 * A listener which does nothing. This is the default.
+	 */
+	MetricsListener NONE = new MetricsListener() {
+
+		public void increment(Counter counter, int count) {
+			// Nothing to do
+		}
+
+		public void record(Timer timer, long durationMillis) {
+			// Nothing to do
+		}
+	};
+
+	void increment(Counter counter, int count);
+
+	void record(Timer timer, long durationMillis);
+}
@@ -0,0 +1,123 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.Context;
+import android.widget.AbsListView;
+
+/**
+ * Scroll listener prefetching the things of the rows about to be displayed,
+ * so their buttons show their final state as soon as they appear. For
+ * example:
+ * 
+ * <pre>
+ * listView.setOnScrollListener(new PrefetchScrollListener(context,
+ * 		new PrefetchScrollListener.ThingIdSource() {
+ * 			public String getThingId(int position) {
+ * 				return adapter.getItem(position).getThingId();
+ * 			}
+ * 		}));
+ * </pre>
+ * 
+ * @author Philippe Bernard
+ */
+public class PrefetchScrollListener implements AbsListView.OnScrollListener {
+
+	public static final int DEFAULT_DISTANCE = 20;
+
+	/**
+	 * Thing displayed at a position of the list.
+	 */
+	public interface ThingIdSource {
+
+		/**
+		 * @return The thing Id of the row, or <code>null</code> if the row has
+		 *         no button.
+		 */
+		String getThingId(int position);
+	}
+
+	private final Context context;
+	private final ThingIdSource source;
+	private final int distance;
+	private final AbsListView.OnScrollListener delegate;
+	// Range of positions already prefetched
+	private int prefetchedFrom = -1, prefetchedTo = -1;
+	private final List<String> ids = new ArrayList<String>();
+
+	public PrefetchScrollListener(Context context, ThingIdSource source) {
+		this(context, source, DEFAULT_DISTANCE, null);
+	}
+
+	/**
+	 * @param distance
+	 *            Number of rows to prefetch before and after the visible ones.
+	 * @param delegate
+	 *            Listener receiving the scroll events as well, since a list
+	 *            only accepts one. May be <code>null</code>.
+	 */
+	public PrefetchScrollListener(Context context, ThingIdSource source,
+			int distance, AbsListView.OnScrollListener delegate) {
+		this.context = context.getApplicationContext();
+		this.source = source;
+		this.distance = distance;
+		this.delegate = delegate;
+	}
+
+	public void onScroll(AbsListView view, int firstVisibleItem,
+			int visibleItemCount, int totalItemCount) {
+		if (delegate != null) {
+			delegate.onScroll(view, firstVisibleItem, visibleItemCount,
+					totalItemCount);
+		}
+		if (visibleItemCount == 0) {
+			return;
+		}
+		int from = Math.max(0, firstVisibleItem - distance);
+		int to = Math.min(totalItemCount, firstVisibleItem + visibleItemCount
+				+ distance);
+		if ((from >= prefetchedFrom) && (to <= prefetchedTo)) {
+			// Called for every scrolled pixel: nothing new to prefetch
+			return;
+		}
+		ids.clear();
+		for (int position = from; position < to; position++) {
+			if ((position < prefetchedFrom) || (position >= prefetchedTo)) {
+				ids.add(source.getThingId(position));
+			}
+		}
+		prefetchedFrom = from;
+		prefetchedTo = to;
+		FlattrSDK.prefetch(context, ids);
+	}
+
+	public void onScrollStateChanged(AbsListView view, int scrollState) {
+		if (delegate != null) {
+			delegate.onScrollStateChanged(view, scrollState);
+		}
+	}
+
+	/**
+	 * Prefetch the rows again on the next scroll, for example after the
+	 * content of the adapter changed.
+	 */
+	public void reset() {
+		prefetchedFrom = -1;
+		prefetchedTo = -1;
+	}
+}
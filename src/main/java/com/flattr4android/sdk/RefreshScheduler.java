@@ -0,0 +1,224 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.shredzone.flattr4j.OpenService;
+
+import android.content.ContentResolver;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Refresh the things displayed by the visible buttons, with a single timer.
+ * Each thing has its own interval: it is shortened when the clicks of the
+ * thing changed since the previous refresh, and lengthened when they did
+ * not. The things due at about the same time are refreshed together, in one
+ * batch.
+ * 
+ * The buttons register their thing while they are attached to a visible
+ * window. When the application goes to the background, its windows are
+ * hidden and nothing is refreshed anymore.
+ * 
+ * All methods are expected to be called on the UI thread.
+ * 
+ * @author Philippe Bernard
+ */
+class RefreshScheduler {
+
+	static final long MIN_INTERVAL = 30 * 1000;
+	static final long INITIAL_INTERVAL = 2 * 60 * 1000;
+	static final long MAX_INTERVAL = 30 * 60 * 1000;
+
+	/**
+	 * Things due within this delay are refreshed with the things due now, so
+	 * the radio is woken up once.
+	 */
+	static final long GROUPING_DELAY = 10 * 1000;
+
+	/**
+	 * Number of things whose interval is remembered once their buttons are
+	 * gone, for when they come back.
+	 */
+	static final int HISTORY_SIZE = 500;
+
+	private static class Entry {
+		long interval = INITIAL_INTERVAL;
+		int lastClicks = -1;
+		// Registration of the visible buttons
+		int buttonCount = 0;
+		OpenService flattrService;
+		ContentResolver contentResolver;
+		long nextRefresh;
+		boolean refreshing = false;
+	}
+
+	private static final Handler handler = new Handler(Looper.getMainLooper());
+	private static final Map<String, Entry> visibleEntries = new HashMap<String, Entry>();
+	private static final Map<String, Entry> history = new LinkedHashMap<String, Entry>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			return size() > HISTORY_SIZE;
+		}
+	};
+	private static long scheduledAt = Long.MAX_VALUE;
+
+	private static final Runnable tick = new Runnable() {
+		public void run() {
+			refreshDueThings();
+		}
+	};
+
+	private static final ThingLoader.Callback refreshCallback = new ThingLoader.Callback() {
+
+		public void onThingLoaded(ThingState state) {
+			Entry entry = refreshDone(state.getThingId());
+			if (entry == null) {
+				return;
+			}
+			if (entry.lastClicks >= 0) {
+				if (state.getClicks() != entry.lastClicks) {
+					// Hot thing
+					entry.interval = Math.max(MIN_INTERVAL, entry.interval / 2);
+				} else {
+					entry.interval = Math.min(MAX_INTERVAL, entry.interval * 2);
+				}
+			}
+			entry.lastClicks = state.getClicks();
+			reschedule(entry);
+		}
+
+		public void onThingLoadFailed(String thingId, Exception error) {
+			Entry entry = refreshDone(thingId);
+			if (entry != null) {
+				// The loader backs off on its own when a source is down
+				reschedule(entry);
+			}
+		}
+
+		public void onLastKnownState(ThingState state) {
+			// Refreshed anyway
+		}
+	};
+
+	private RefreshScheduler() {
+	}
+
+	/**
+	 * Refresh a thing periodically, as long as a visible button displays it.
+	 * Each call must be balanced by a call to {@link #unregister(String)}.
+	 */
+	static synchronized void register(ContentResolver contentResolver,
+			OpenService flattrService, String thingId, int clicks) {
+		Entry entry = visibleEntries.get(thingId);
+		if (entry == null) {
+			entry = history.get(thingId);
+			if (entry == null) {
+				entry = new Entry();
+				history.put(thingId, entry);
+			}
+			if (entry.lastClicks < 0) {
+				entry.lastClicks = clicks;
+			}
+			entry.nextRefresh = SystemClock.uptimeMillis() + entry.interval;
+			visibleEntries.put(thingId, entry);
+			schedule(entry.nextRefresh);
+		}
+		entry.buttonCount++;
+		entry.flattrService = flattrService;
+		entry.contentResolver = contentResolver;
+	}
+
+	static synchronized void unregister(String thingId) {
+		Entry entry = visibleEntries.get(thingId);
+		if ((entry == null) || (--entry.buttonCount > 0)) {
+			return;
+		}
+		visibleEntries.remove(thingId);
+		entry.flattrService = null;
+		entry.contentResolver = null;
+		if (entry.refreshing) {
+			entry.refreshing = false;
+			ThingLoader.cancel(thingId, refreshCallback);
+		}
+		if (visibleEntries.isEmpty()) {
+			// Nothing visible: stop the timer
+			handler.removeCallbacks(tick);
+			scheduledAt = Long.MAX_VALUE;
+		}
+	}
+
+	private static synchronized void refreshDueThings() {
+		scheduledAt = Long.MAX_VALUE;
+		long now = SystemClock.uptimeMillis();
+		List<String> dueIds = new ArrayList<String>();
+		long next = Long.MAX_VALUE;
+		for (Map.Entry<String, Entry> mapEntry : visibleEntries.entrySet()) {
+			Entry entry = mapEntry.getValue();
+			if (entry.refreshing) {
+				continue;
+			}
+			if (entry.nextRefresh <= now + GROUPING_DELAY) {
+				dueIds.add(mapEntry.getKey());
+			} else {
+				next = Math.min(next, entry.nextRefresh);
+			}
+		}
+		// The loader batches the things requested in the same window
+		for (String thingId : dueIds) {
+			Entry entry = visibleEntries.get(thingId);
+			entry.refreshing = true;
+			ThingLoader.load(entry.contentResolver, entry.flattrService,
+					thingId, LoaderExecutor.PRIORITY_ATTACHED, refreshCallback);
+		}
+		if (next != Long.MAX_VALUE) {
+			schedule(next);
+		}
+	}
+
+	private static synchronized Entry refreshDone(String thingId) {
+		Entry entry = visibleEntries.get(thingId);
+		if ((entry == null) || !entry.refreshing) {
+			return null;
+		}
+		entry.refreshing = false;
+		return entry;
+	}
+
+	private static synchronized void reschedule(Entry entry) {
+		entry.nextRefresh = SystemClock.uptimeMillis() + entry.interval;
+		schedule(entry.nextRefresh);
+	}
+
+	private static void schedule(long time) {
+		if (time >= scheduledAt) {
+			// The timer fires earlier anyway
+			return;
+		}
+		handler.removeCallbacks(tick);
+		scheduledAt = time;
+		handler.postDelayed(tick,
+				Math.max(0, time - SystemClock.uptimeMillis()));
+	}
+}
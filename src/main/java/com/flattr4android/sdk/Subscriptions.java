@@ -0,0 +1,89 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Callbacks subscribed to things, keyed by thing Id.
+ * 
+ * @author Philippe Bernard
+ */
+class Subscriptions<C> {
+
+	private final Map<String, List<C>> subscribers = new HashMap<String, List<C>>();
+
+	/**
+	 * @return <code>false</code> if the callback was already subscribed to
+	 *         the thing.
+	 */
+	synchronized boolean add(String thingId, C callback) {
+		List<C> callbacks = subscribers.get(thingId);
+		if (callbacks == null) {
+			callbacks = new ArrayList<C>(1);
+			subscribers.put(thingId, callbacks);
+		}
+		if (callbacks.contains(callback)) {
+			return false;
+		}
+		callbacks.add(callback);
+		return true;
+	}
+
+	/**
+	 * @return <code>true</code> if the callback was the last subscriber of the
+	 *         thing.
+	 */
+	synchronized boolean remove(String thingId, C callback) {
+		List<C> callbacks = subscribers.get(thingId);
+		if ((callbacks == null) || !callbacks.remove(callback)) {
+			return false;
+		}
+		if (callbacks.isEmpty()) {
+			subscribers.remove(thingId);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return A copy of the callbacks subscribed to a thing, never
+	 *         <code>null</code>.
+	 */
+	synchronized List<C> get(String thingId) {
+		List<C> callbacks = subscribers.get(thingId);
+		return (callbacks != null) ? new ArrayList<C>(callbacks)
+				: new ArrayList<C>(0);
+	}
+
+	synchronized int count(String thingId) {
+		List<C> callbacks = subscribers.get(thingId);
+		return (callbacks != null) ? callbacks.size() : 0;
+	}
+
+	/**
+	 * @return The Ids of the things with at least one subscriber.
+	 */
+	synchronized List<String> thingIds() {
+		return new ArrayList<String>(subscribers.keySet());
+	}
+
+	synchronized boolean isEmpty() {
+		return subscribers.isEmpty();
+	}
+}
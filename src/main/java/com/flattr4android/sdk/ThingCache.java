@@ -0,0 +1,199 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded in-memory cache of thing states, shared by all
+ * <code>FlattrButton</code> instances. The least recently used entries are
+ * evicted when the cache is full, and entries older than the time-to-live are
+ * dropped when they are looked up.
+ * <p>
+ * When a snapshot store is attached, every state put in the cache is also
+ * persisted, and the last known state of a thing remains available across
+ * process restarts, though stale.
+ * <p>
+ * When a compact store is enabled, the entries evicted from the cache are
+ * moved to it rather than dropped: the most recently used things are kept
+ * as <code>ThingState</code> objects, many more in a compact form.
+ * 
+ * @author Philippe Bernard
+ */
+class ThingCache {
+
+	public static final int DEFAULT_MAX_SIZE = 500;
+	public static final long DEFAULT_TTL = 5 * 60 * 1000;
+
+	private final int maxSize;
+	private final long ttl;
+	private final LinkedHashMap<String, ThingState> entries;
+	private ThingSnapshotStore snapshotStore;
+	private CompactThingStore compactStore;
+
+	ThingCache(int maxSize, long ttl) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Invalid cache size " + maxSize);
+		}
+		this.maxSize = maxSize;
+		this.ttl = ttl;
+		// Access order, for LRU eviction
+		this.entries = new LinkedHashMap<String, ThingState>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<String, ThingState> eldest) {
+				if (size() <= ThingCache.this.maxSize) {
+					return false;
+				}
+				if (compactStore != null) {
+					compactStore.put(eldest.getValue());
+				}
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Return the cached state of a thing, or <code>null</code> if the thing is
+	 * not cached or if its entry expired.
+	 */
+	synchronized ThingState get(String thingId) {
+		ThingState state = getInMemory(thingId);
+		if ((state != null) && isExpired(state)) {
+			entries.remove(thingId);
+			return null;
+		}
+		return state;
+	}
+
+	/**
+	 * Return the latest known state of a thing, even if it is not fresh
+	 * anymore, or <code>null</code> if the thing was never loaded.
+	 * 
+	 * @see #isFresh(ThingState)
+	 */
+	ThingState getLatest(String thingId) {
+		ThingSnapshotStore store;
+		synchronized (this) {
+			ThingState state = getInMemory(thingId);
+			if (state != null) {
+				return state;
+			}
+			store = snapshotStore;
+		}
+		return (store != null) ? store.get(thingId) : null;
+	}
+
+	boolean isFresh(ThingState state) {
+		return !isExpired(state);
+	}
+
+	void put(ThingState state) {
+		putAll(Collections.singletonList(state));
+	}
+
+	/**
+	 * Put the states of several things, such as a load batch: the snapshot
+	 * store persists them with a single write.
+	 */
+	void putAll(Collection<ThingState> states) {
+		ThingSnapshotStore store;
+		synchronized (this) {
+			for (ThingState state : states) {
+				if (compactStore != null) {
+					compactStore.remove(state.getThingId());
+				}
+				entries.put(state.getThingId(), state);
+			}
+			store = snapshotStore;
+		}
+		if ((store != null) && !states.isEmpty()) {
+			store.putAll(states);
+		}
+	}
+
+	synchronized void setSnapshotStore(ThingSnapshotStore snapshotStore) {
+		this.snapshotStore = snapshotStore;
+	}
+
+	synchronized boolean hasSnapshotStore() {
+		return snapshotStore != null;
+	}
+
+	/**
+	 * Keep up to <code>capacity</code> more things in memory, in a compact
+	 * form, or disable the compact store with a capacity of 0.
+	 */
+	synchronized void setCompactCapacity(int capacity) {
+		if (capacity <= 0) {
+			compactStore = null;
+			return;
+		}
+		// The things of a previous store are dropped, they remain in the
+		// snapshot store if any
+		compactStore = new CompactThingStore(capacity);
+	}
+
+	synchronized void remove(String thingId) {
+		entries.remove(thingId);
+		if (compactStore != null) {
+			compactStore.remove(thingId);
+		}
+	}
+
+	void clear() {
+		ThingSnapshotStore store;
+		synchronized (this) {
+			entries.clear();
+			if (compactStore != null) {
+				compactStore.clear();
+			}
+			store = snapshotStore;
+		}
+		if (store != null) {
+			store.clear();
+		}
+	}
+
+	synchronized int size() {
+		return entries.size()
+				+ ((compactStore != null) ? compactStore.size() : 0);
+	}
+
+	/**
+	 * Look a thing up in the cache, then in the compact store. A thing found
+	 * in the compact store is moved back to the cache.
+	 */
+	private ThingState getInMemory(String thingId) {
+		ThingState state = entries.get(thingId);
+		if ((state == null) && (compactStore != null)) {
+			state = compactStore.get(thingId);
+			if (state != null) {
+				compactStore.remove(thingId);
+				entries.put(thingId, state);
+			}
+		}
+		return state;
+	}
+
+	private boolean isExpired(ThingState state) {
+		return (System.currentTimeMillis() - state.getLoadedAt()) > ttl;
+	}
+}
@@ -0,0 +1,831 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+import org.shredzone.flattr4j.OpenService;
+import org.shredzone.flattr4j.exception.FlattrServiceException;
+import org.shredzone.flattr4j.exception.ForbiddenException;
+import org.shredzone.flattr4j.exception.NotFoundException;
+import org.shredzone.flattr4j.exception.ValidationException;
+import org.shredzone.flattr4j.model.Thing;
+import org.shredzone.flattr4j.model.ThingId;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Load things, first through the Flattr application, then with local means.
+ * Concurrent loads of the same thing share a single fetch: every caller gets
+ * the same result or error. Things requested within a short window are
+ * resolved together, with one provider query and one REST call per batch.
+ * Batches run on the SDK's own executor, most urgent first, and are cancelled
+ * once nobody waits for their things anymore.
+ * <p>
+ * Callbacks can also watch things: they are notified of every new state of
+ * these things, including the changes made in the Flattr application.
+ * 
+ * @author Philippe Bernard
+ */
+class ThingLoader implements Runnable {
+
+	/**
+	 * Receive the outcome of a load. Methods are invoked in the UI thread.
+	 */
+	interface Callback {
+
+		void onThingLoaded(ThingState state);
+
+		void onThingLoadFailed(String thingId, Exception error);
+
+		/**
+		 * Called with the state of the thing known from a previous run, once
+		 * the snapshot is read. It is not fresh, and the load of the thing,
+		 * if any, goes on.
+		 */
+		void onLastKnownState(ThingState state);
+	}
+
+	/**
+	 * Time during which requested things are collected before being loaded,
+	 * in milliseconds.
+	 */
+	static final long BATCH_WINDOW = 20;
+
+	/**
+	 * Maximum number of things loaded by a single batch.
+	 */
+	static final int MAX_BATCH_SIZE = 30;
+
+	/**
+	 * Number of batches loaded at the same time.
+	 */
+	static final int LOADER_THREAD_COUNT = 2;
+
+	private static final InFlightRegistry<Callback> inFlight = new InFlightRegistry<Callback>();
+	private static final LoaderExecutor executor = new LoaderExecutor(
+			LOADER_THREAD_COUNT);
+
+	private static final Handler handler = new Handler(Looper.getMainLooper());
+	// Health of the two sources of things
+	private static final FailurePolicy providerPolicy = new FailurePolicy();
+	private static final FailurePolicy restPolicy = new FailurePolicy();
+	private static final Object lock = new Object();
+	// Things waiting for the batch window to close, with their priority
+	private static final Map<OpenService, Map<String, Integer>> pendingIds = new LinkedHashMap<OpenService, Map<String, Integer>>();
+	// Things handed to the executor
+	private static final Map<String, ThingLoader> dispatchedIds = new HashMap<String, ThingLoader>();
+	// Things not visible, waiting for a burst on a metered network
+	private static final Map<OpenService, Map<String, Integer>> deferredIds = new LinkedHashMap<OpenService, Map<String, Integer>>();
+	private static ContentResolver pendingContentResolver;
+	private static boolean flushScheduled = false;
+	private static boolean deferredFlushScheduled = false;
+
+	// Callbacks bound to things, notified of every change
+	private static final Subscriptions<Callback> watchers = new Subscriptions<Callback>();
+	private static ThingProvider observedProvider;
+	// Shared, so what is learned about the Flattr application is kept
+	private static ThingProvider provider;
+	private static boolean providerRefreshScheduled = false;
+
+	private static final ContentObserver providerObserver = new ContentObserver(
+			handler) {
+		@Override
+		public void onChange(boolean selfChange) {
+			scheduleProviderRefresh();
+		}
+	};
+
+	// Prefetched things only end up in the thing cache
+	private static final Callback PREFETCH_CALLBACK = new Callback() {
+		public void onThingLoaded(ThingState state) {
+			// Nothing to do
+		}
+
+		public void onThingLoadFailed(String thingId, Exception error) {
+			// Nothing to do
+		}
+
+		public void onLastKnownState(ThingState state) {
+			// Nothing to do
+		}
+	};
+
+	private static final Runnable flush = new Runnable() {
+		public void run() {
+			flushPendingIds();
+		}
+	};
+
+	private static final Runnable flushDeferred = new Runnable() {
+		public void run() {
+			flushDeferredIds();
+		}
+	};
+
+	private ContentResolver contentResolver;
+	private OpenService flattrService;
+	private List<String> thingIds;
+	private Set<String> cancelledIds = new HashSet<String>();
+	private Future<Void> future;
+	private Map<String, ThingState> states = new HashMap<String, ThingState>();
+	private Map<String, Exception> errors = new HashMap<String, Exception>();
+	// The states loaded by this batch, cached all at once
+	private List<ThingState> loadedStates = new ArrayList<ThingState>();
+
+	private final Runnable deliver = new Runnable() {
+		public void run() {
+			deliverResults();
+		}
+	};
+
+	/**
+	 * Load a thing, or wait for the load in progress if another caller already
+	 * asked for the same thing.
+	 * 
+	 * @param flattrService
+	 *            The REST client to use, <code>null</code> for the client
+	 *            shared by the SDK.
+	 * @param priority
+	 *            One of the <code>LoaderExecutor.PRIORITY_*</code> constants.
+	 *            When several callers wait for the same thing, the most urgent
+	 *            priority wins.
+	 */
+	static void load(ContentResolver contentResolver,
+			OpenService flattrService, String thingId, int priority,
+			Callback callback) {
+		synchronized (lock) {
+			boolean newLoad = inFlight.join(thingId, callback);
+			Map<String, Integer> ids = pendingIds.get(flattrService);
+			if (!newLoad) {
+				// Raise the priority of a load which did not start yet
+				Integer current = (ids != null) ? ids.get(thingId) : null;
+				if ((current != null) && (priority < current)) {
+					ids.put(thingId, priority);
+				}
+				Map<String, Integer> deferred = deferredIds.get(flattrService);
+				current = (deferred != null) ? deferred.get(thingId) : null;
+				if ((current == null) || (priority >= current)) {
+					return;
+				}
+				// Consider the deferred load again with its new priority
+				deferred.remove(thingId);
+			}
+			if (ids == null) {
+				ids = new HashMap<String, Integer>();
+				pendingIds.put(flattrService, ids);
+			}
+			ids.put(thingId, priority);
+			pendingContentResolver = contentResolver;
+			if (!flushScheduled) {
+				flushScheduled = true;
+				handler.postDelayed(flush, BATCH_WINDOW);
+			}
+		}
+	}
+
+	/**
+	 * Load a thing into the thing cache, nobody waiting for the result. Nothing
+	 * is done if the thing is already being loaded.
+	 */
+	static void prefetch(ContentResolver contentResolver,
+			OpenService flattrService, String thingId) {
+		synchronized (lock) {
+			if (!inFlight.isInFlight(thingId)) {
+				load(contentResolver, flattrService, thingId,
+						LoaderExecutor.PRIORITY_BACKGROUND, PREFETCH_CALLBACK);
+			}
+		}
+	}
+
+	/**
+	 * Stop waiting for a thing. The load is cancelled if nobody else waits
+	 * for it.
+	 */
+	static void cancel(String thingId, Callback callback) {
+		synchronized (lock) {
+			if (!inFlight.leave(thingId, callback)) {
+				return;
+			}
+			for (Map<String, Integer> ids : pendingIds.values()) {
+				ids.remove(thingId);
+			}
+			for (Map<String, Integer> ids : deferredIds.values()) {
+				ids.remove(thingId);
+			}
+			ThingLoader loader = dispatchedIds.remove(thingId);
+			if (loader != null) {
+				loader.cancelThing(thingId);
+			}
+		}
+	}
+
+	/**
+	 * Be notified of every new state of a thing, until
+	 * {@link #unwatch(String, Callback)} is called.
+	 */
+	static void watch(ContentResolver contentResolver, String thingId,
+			Callback callback) {
+		synchronized (lock) {
+			if (watchers.isEmpty()) {
+				// One observer for all things
+				observedProvider = getProvider(contentResolver);
+				observedProvider.registerObserver(providerObserver);
+			}
+			watchers.add(thingId, callback);
+		}
+	}
+
+	private static ThingProvider getProvider(ContentResolver contentResolver) {
+		synchronized (lock) {
+			if (provider == null) {
+				provider = new ThingProvider(contentResolver);
+			}
+			return provider;
+		}
+	}
+
+	static int getWatcherCount(String thingId) {
+		return watchers.count(thingId);
+	}
+
+	static void unwatch(String thingId, Callback callback) {
+		synchronized (lock) {
+			watchers.remove(thingId, callback);
+			if (watchers.isEmpty() && (observedProvider != null)) {
+				observedProvider.unregisterObserver(providerObserver);
+				observedProvider = null;
+			}
+		}
+	}
+
+	private static void scheduleProviderRefresh() {
+		synchronized (lock) {
+			if (providerRefreshScheduled || (observedProvider == null)) {
+				return;
+			}
+			providerRefreshScheduled = true;
+			final ThingProvider provider = observedProvider;
+			executor.execute(new Runnable() {
+				public void run() {
+					refreshFromProvider(provider);
+				}
+			}, LoaderExecutor.PRIORITY_ATTACHED);
+		}
+	}
+
+	/**
+	 * Query the Flattr application again for the watched things, and notify
+	 * the watchers of the things which changed.
+	 */
+	private static void refreshFromProvider(ThingProvider provider) {
+		List<String> ids;
+		synchronized (lock) {
+			providerRefreshScheduled = false;
+			ids = watchers.thingIds();
+		}
+		final List<ThingState> changedStates = new ArrayList<ThingState>();
+		ThingCache cache = FlattrSDK.getThingCache();
+		for (int i = 0; i < ids.size(); i += MAX_BATCH_SIZE) {
+			List<String> batch = ids.subList(i,
+					Math.min(i + MAX_BATCH_SIZE, ids.size()));
+			if (!providerPolicy.allowRequest(SystemClock.uptimeMillis())) {
+				break;
+			}
+			Map<String, Integer> clicks;
+			try {
+				clicks = provider.queryClicks(batch);
+				providerPolicy.onSuccess();
+			} catch (Exception e) {
+				providerPolicy.onFailure(SystemClock.uptimeMillis());
+				Log.d(FlattrSDK.LOG_TAG, "Error while refreshing things "
+						+ "from Flattr application", e);
+				// Still notify the changes found so far
+				break;
+			}
+			List<ThingState> batchStates = new ArrayList<ThingState>();
+			for (Map.Entry<String, Integer> entry : clicks.entrySet()) {
+				if (!batch.contains(entry.getKey())) {
+					// Not asked for: maybe no longer watched, or not a thing
+					// of this application
+					continue;
+				}
+				ThingState latest = cache.getLatest(entry.getKey());
+				ThingStatus status = FlattrSDK.getUserStatus(entry.getKey());
+				if ((latest == null) || !latest.isGotAsUser()
+						|| (latest.getClicks() != entry.getValue())
+						|| (latest.getStatus() != status)) {
+					ThingState state = FlattrSDK.applyPendingActions(
+							new ThingState(entry.getKey(), entry.getValue(),
+									status, true));
+					batchStates.add(state);
+				}
+			}
+			cache.putAll(batchStates);
+			changedStates.addAll(batchStates);
+		}
+		if (!changedStates.isEmpty()) {
+			handler.post(new Runnable() {
+				public void run() {
+					for (ThingState state : changedStates) {
+						notifyWatchers(state, null);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Give the states read from the snapshot to the callbacks of the things
+	 * being loaded or watched: they asked before the snapshot was read, and
+	 * would otherwise display nothing until their load completes.
+	 */
+	static void publishSnapshot() {
+		handler.post(new Runnable() {
+			public void run() {
+				ThingCache cache = FlattrSDK.getThingCache();
+				Set<String> thingIds = new HashSet<String>();
+				synchronized (lock) {
+					thingIds.addAll(inFlight.thingIds());
+					thingIds.addAll(watchers.thingIds());
+				}
+				for (String thingId : thingIds) {
+					ThingState state = cache.getLatest(thingId);
+					if (state == null) {
+						continue;
+					}
+					List<Callback> callbacks = inFlight.get(thingId);
+					for (Callback callback : watchers.get(thingId)) {
+						if (!callbacks.contains(callback)) {
+							callbacks.add(callback);
+						}
+					}
+					for (Callback callback : callbacks) {
+						callback.onLastKnownState(state);
+					}
+				}
+			}
+		});
+	}
+
+	static void runInBackground(Runnable task) {
+		runInBackground(task, LoaderExecutor.PRIORITY_BACKGROUND);
+	}
+
+	static void runInBackground(Runnable task, int priority) {
+		executor.execute(task, priority);
+	}
+
+	/**
+	 * Apply the new status of things to their cached states, and notify the
+	 * watchers. Things not in the cache get their status when they are loaded.
+	 */
+	static void updateStatuses(Collection<String> thingIds) {
+		ThingCache cache = FlattrSDK.getThingCache();
+		List<ThingState> updatedStates = new ArrayList<ThingState>();
+		for (String thingId : thingIds) {
+			ThingState latest = cache.getLatest(thingId);
+			if (latest == null) {
+				continue;
+			}
+			ThingState state = FlattrSDK.applyPendingActions(new ThingState(
+					thingId, latest.getClicks(),
+					FlattrSDK.getUserStatus(thingId), true,
+					latest.getLoadedAt()));
+			if (state.getStatus() != latest.getStatus()
+					|| !latest.isGotAsUser()) {
+				updatedStates.add(state);
+			}
+		}
+		cache.putAll(updatedStates);
+		for (ThingState state : updatedStates) {
+			publish(state);
+		}
+	}
+
+	/**
+	 * Notify the watchers of a thing of a state known without loading it,
+	 * such as the result of a flattr action.
+	 */
+	static void publish(final ThingState state) {
+		handler.post(new Runnable() {
+			public void run() {
+				notifyWatchers(state, null);
+			}
+		});
+	}
+
+	/**
+	 * Notify the watchers of a thing, except those which were already
+	 * notified as waiters. Called without holding the lock, as the callbacks
+	 * may call the SDK back from another thread.
+	 */
+	private static void notifyWatchers(ThingState state,
+			List<Callback> alreadyNotified) {
+		for (Callback callback : watchers.get(state.getThingId())) {
+			if ((alreadyNotified == null)
+					|| !alreadyNotified.contains(callback)) {
+				callback.onThingLoaded(state);
+			}
+		}
+	}
+
+	/**
+	 * Send the pending loads, and the deferred ones along with them, unless
+	 * they can all wait for a burst.
+	 */
+	private static void flushPendingIds() {
+		int priority;
+		synchronized (lock) {
+			flushScheduled = false;
+			priority = getMostUrgentPendingPriority();
+		}
+		if (priority == Integer.MAX_VALUE) {
+			return;
+		}
+		// Outside of the lock: the connectivity source may be slow
+		boolean urgent = FlattrSDK.getLoadingPolicy().isUrgent(priority,
+				SystemClock.uptimeMillis());
+		int deferredCount = 0;
+		synchronized (lock) {
+			if (urgent) {
+				moveIds(deferredIds, pendingIds);
+				if (deferredFlushScheduled) {
+					handler.removeCallbacks(flushDeferred);
+					deferredFlushScheduled = false;
+				}
+				dispatchPendingIds();
+			} else if (getMostUrgentPendingPriority() >= priority) {
+				deferredCount = deferPendingIds();
+			}
+			// Else a more urgent load came in meanwhile, its flush is
+			// scheduled
+		}
+		if (deferredCount > 0) {
+			FlattrSDK.getMetrics().increment(
+					MetricsListener.Counter.LOAD_DEFERRED, deferredCount);
+		}
+	}
+
+	private static void flushDeferredIds() {
+		synchronized (lock) {
+			deferredFlushScheduled = false;
+			moveIds(deferredIds, pendingIds);
+			dispatchPendingIds();
+		}
+	}
+
+	/**
+	 * @return The most urgent priority of the pending loads,
+	 *         <code>Integer.MAX_VALUE</code> if there is none.
+	 */
+	private static int getMostUrgentPendingPriority() {
+		int mostUrgent = Integer.MAX_VALUE;
+		for (Map<String, Integer> ids : pendingIds.values()) {
+			for (Integer priority : ids.values()) {
+				mostUrgent = Math.min(mostUrgent, priority);
+			}
+		}
+		return mostUrgent;
+	}
+
+	/**
+	 * @return The number of loads deferred.
+	 */
+	private static int deferPendingIds() {
+		int count = 0;
+		for (Map<String, Integer> ids : pendingIds.values()) {
+			count += ids.size();
+		}
+		moveIds(pendingIds, deferredIds);
+		if ((count > 0) && !deferredFlushScheduled) {
+			deferredFlushScheduled = true;
+			handler.postDelayed(flushDeferred,
+					LoadingPolicy.METERED_DEFER_DELAY);
+		}
+		return count;
+	}
+
+	private static void moveIds(Map<OpenService, Map<String, Integer>> from,
+			Map<OpenService, Map<String, Integer>> to) {
+		for (Map.Entry<OpenService, Map<String, Integer>> entry : from
+				.entrySet()) {
+			Map<String, Integer> ids = to.get(entry.getKey());
+			if (ids == null) {
+				ids = new HashMap<String, Integer>();
+				to.put(entry.getKey(), ids);
+			}
+			for (Map.Entry<String, Integer> id : entry.getValue().entrySet()) {
+				Integer current = ids.get(id.getKey());
+				if ((current == null) || (id.getValue() < current)) {
+					ids.put(id.getKey(), id.getValue());
+				}
+			}
+		}
+		from.clear();
+	}
+
+	private static void dispatchPendingIds() {
+		for (Map.Entry<OpenService, Map<String, Integer>> entry : pendingIds
+				.entrySet()) {
+			final Map<String, Integer> priorities = entry.getValue();
+			List<String> ids = new ArrayList<String>(priorities.keySet());
+			// Most urgent things first
+			Collections.sort(ids, new Comparator<String>() {
+				public int compare(String id1, String id2) {
+					return priorities.get(id1) - priorities.get(id2);
+				}
+			});
+			for (int i = 0; i < ids.size(); i += MAX_BATCH_SIZE) {
+				List<String> batch = new ArrayList<String>(ids.subList(i,
+						Math.min(i + MAX_BATCH_SIZE, ids.size())));
+				int priority = priorities.get(batch.get(0));
+				ThingLoader loader = new ThingLoader(pendingContentResolver,
+						entry.getKey(), batch);
+				for (String thingId : batch) {
+					dispatchedIds.put(thingId, loader);
+				}
+				loader.future = executor.execute(loader, priority);
+			}
+		}
+		pendingIds.clear();
+		pendingContentResolver = null;
+	}
+
+	private ThingLoader(ContentResolver contentResolver,
+			OpenService flattrService, List<String> thingIds) {
+		this.contentResolver = contentResolver;
+		this.flattrService = flattrService;
+		this.thingIds = thingIds;
+	}
+
+	private void cancelThing(String thingId) {
+		synchronized (cancelledIds) {
+			cancelledIds.add(thingId);
+			if (cancelledIds.size() == thingIds.size()) {
+				// Nobody is interested in this batch anymore
+				executor.cancel(future);
+			}
+		}
+	}
+
+	public void run() {
+		long start = SystemClock.uptimeMillis();
+		try {
+			loadThings();
+			FlattrSDK.getMetrics().record(MetricsListener.Timer.LOAD,
+					SystemClock.uptimeMillis() - start);
+		} catch (RuntimeException e) {
+			Log.d(FlattrSDK.LOG_TAG, "Error while loading things " + thingIds,
+					e);
+			for (String thingId : thingIds) {
+				if (!states.containsKey(thingId)) {
+					errors.put(thingId, e);
+				}
+			}
+		} finally {
+			FlattrSDK.getThingCache().putAll(loadedStates);
+			// Always, or the waiters of these things would never be called
+			// and the things never loaded again
+			handler.post(deliver);
+		}
+	}
+
+	private void loadThings() {
+		// First plan: get the things through the app
+		List<String> remainingIds = new ArrayList<String>(thingIds);
+		if (providerPolicy.allowRequest(SystemClock.uptimeMillis())) {
+			try {
+				Map<String, Integer> clicks = getProvider(contentResolver)
+						.queryClicks(thingIds);
+				providerPolicy.onSuccess();
+				for (Map.Entry<String, Integer> entry : clicks.entrySet()) {
+					if (remainingIds.remove(entry.getKey())) {
+						providerThingFound(entry.getKey(), entry.getValue());
+					}
+				}
+			} catch (Exception e) {
+				providerPolicy.onFailure(SystemClock.uptimeMillis());
+				Log.d(FlattrSDK.LOG_TAG, "Error while trying to get things "
+						+ thingIds + " from Flattr application", e);
+				remainingIds = new ArrayList<String>(thingIds);
+				for (String thingId : thingIds) {
+					errors.put(thingId, e);
+				}
+			}
+		}
+
+		// On a slow link or without connection, the things known from a
+		// previous load are good enough
+		LoadingPolicy loadingPolicy = FlattrSDK.getLoadingPolicy();
+		long maxAge = loadingPolicy.getMaxLocalDataAge();
+		if (maxAge >= 0) {
+			useLocalData(remainingIds, maxAge);
+		}
+
+		// Second plan: get the things with local means
+		if (remainingIds.isEmpty()) {
+			return;
+		}
+		if (!loadingPolicy.isConnected()) {
+			// Not a failure of the Rest API
+			Exception e = new FlattrSDKException("No network connection");
+			for (String thingId : remainingIds) {
+				errors.put(thingId, e);
+			}
+			return;
+		}
+		if (!restPolicy.allowRequest(SystemClock.uptimeMillis())) {
+			// Fail fast, the buttons will try again later
+			Exception e = new FlattrSDKException(
+					"Flattr Rest API temporarily unavailable");
+			for (String thingId : remainingIds) {
+				errors.put(thingId, e);
+			}
+			return;
+		}
+		try {
+			loadingPolicy.onNetworkActivity(SystemClock.uptimeMillis());
+			loadWithService(remainingIds);
+			restPolicy.onSuccess();
+		} catch (FlattrServiceException e) {
+			if (isRejectedRequest(e)) {
+				// The Rest API answered, it is healthy (eg. unknown thing)
+				restPolicy.onSuccess();
+				for (String thingId : remainingIds) {
+					errors.put(thingId, e);
+				}
+			} else {
+				// Rate limit, server error...
+				restFailed(remainingIds, e);
+			}
+		} catch (Exception e) {
+			restFailed(remainingIds, e);
+		}
+	}
+
+	/**
+	 * Use the latest known states of things not older than the given age,
+	 * and remove them from the list.
+	 */
+	private void useLocalData(List<String> ids, long maxAge) {
+		ThingCache cache = FlattrSDK.getThingCache();
+		long now = System.currentTimeMillis();
+		for (Iterator<String> it = ids.iterator(); it.hasNext();) {
+			String thingId = it.next();
+			ThingState latest = cache.getLatest(thingId);
+			if ((latest != null) && (now - latest.getLoadedAt() <= maxAge)) {
+				FlattrSDK.getMetrics().increment(
+						MetricsListener.Counter.LOCAL_FALLBACK, 1);
+				states.put(thingId, latest);
+				errors.remove(thingId);
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the Rest API refused the request itself,
+	 *         which says nothing about its health.
+	 */
+	private static boolean isRejectedRequest(FlattrServiceException e) {
+		return (e instanceof NotFoundException)
+				|| (e instanceof ForbiddenException)
+				|| (e instanceof ValidationException);
+	}
+
+	private void restFailed(List<String> ids, Exception e) {
+		restPolicy.onFailure(SystemClock.uptimeMillis());
+		Log.d(FlattrSDK.LOG_TAG, "Error while loading things " + ids
+				+ " with local means", e);
+		for (String thingId : ids) {
+			errors.put(thingId, e);
+		}
+	}
+
+	/**
+	 * Delay before loading a thing again, after it failed several times in
+	 * a row. Jittered, and not shorter than the time the Rest API needs to
+	 * accept requests again, so the buttons in error do not retry all at
+	 * once.
+	 */
+	static long getRetryDelay(int failures) {
+		long delay = restPolicy.getBackoffDelay(Math.max(0, failures - 1));
+		return Math.max(delay,
+				restPolicy.getRemainingOpenTime(SystemClock.uptimeMillis()));
+	}
+
+	private void providerThingFound(String thingId, int clicks) {
+		// Thing obtained with the user credentials (ie. the Flattr app)
+		FlattrSDK.getMetrics().increment(MetricsListener.Counter.PROVIDER_HIT,
+				1);
+		thingFound(new ThingState(thingId, clicks,
+				FlattrSDK.getUserStatus(thingId), true));
+	}
+
+	private void thingFound(ThingState state) {
+		// The flattr actions not sent yet are not part of the loaded state
+		state = FlattrSDK.applyPendingActions(state);
+		loadedStates.add(state);
+		states.put(state.getThingId(), state);
+		errors.remove(state.getThingId());
+	}
+
+	private void loadWithService(List<String> ids) throws Exception {
+		// Created here on first use, not by the buttons on the UI thread
+		OpenService service = (flattrService != null) ? flattrService
+				: FlattrSDK.getOpenService();
+		List<Thing> things;
+		FlattrSDK.getMetrics().increment(MetricsListener.Counter.REST_FETCH, 1);
+		if (ids.size() == 1) {
+			things = new ArrayList<Thing>(1);
+			things.add(service.getThing(Thing.withId(ids.get(0))));
+		} else {
+			List<ThingId> thingIds = new ArrayList<ThingId>(ids.size());
+			for (String thingId : ids) {
+				thingIds.add(Thing.withId(thingId));
+			}
+			things = service.getThings(thingIds);
+		}
+
+		for (Thing thing : things) {
+			// Thing obtained with the app credentials, but its status may be
+			// known anyway
+			thingFound(new ThingState(thing.getThingId(), thing.getClicks(),
+					FlattrSDK.getStatus(thing), FlattrSDK.isUserStatusKnown()));
+		}
+		for (String thingId : ids) {
+			if (!states.containsKey(thingId)) {
+				errors.put(thingId, new FlattrSDKException("Thing " + thingId
+						+ " not found"));
+			}
+		}
+	}
+
+	private void deliverResults() {
+		List<String> deliveredIds = new ArrayList<String>(thingIds.size());
+		List<List<Callback>> waiters = new ArrayList<List<Callback>>(
+				thingIds.size());
+		synchronized (lock) {
+			for (String thingId : thingIds) {
+				synchronized (cancelledIds) {
+					if (cancelledIds.contains(thingId)) {
+						continue;
+					}
+				}
+				dispatchedIds.remove(thingId);
+				deliveredIds.add(thingId);
+				waiters.add(inFlight.complete(thingId));
+			}
+		}
+		// The callbacks run outside of the lock: they may call the SDK back,
+		// and take locks of their own (see RefreshScheduler)
+		for (int i = 0; i < deliveredIds.size(); i++) {
+			String thingId = deliveredIds.get(i);
+			ThingState state = states.get(thingId);
+			if (state == null) {
+				FlattrSDK.getMetrics().increment(
+						MetricsListener.Counter.LOAD_ERROR, 1);
+			}
+			List<Callback> callbacks = waiters.get(i);
+			for (Callback callback : callbacks) {
+				if (state != null) {
+					callback.onThingLoaded(state);
+				} else {
+					callback.onThingLoadFailed(thingId, errors.get(thingId));
+				}
+			}
+			if (state != null) {
+				notifyWatchers(state, callbacks);
+			}
+		}
+	}
+}
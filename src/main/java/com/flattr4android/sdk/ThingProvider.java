@@ -0,0 +1,126 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.database.ContentObserver;
+import android.net.Uri;
+
+/**
+ * Access to the things known by the Flattr application, through its content
+ * provider. Queries request an explicit projection, so column indexes are
+ * known in advance, and always close their cursor.
+ * 
+ * @author Philippe Bernard
+ */
+class ThingProvider {
+
+	static final String ID_COLUMN = "id";
+	static final String CLICKS_COLUMN = "clicks";
+
+	private static final String[] PROJECTION = { ID_COLUMN, CLICKS_COLUMN };
+	private static final int ID_INDEX = 0;
+	private static final int CLICKS_INDEX = 1;
+	// The Id is known when querying a single thing
+	private static final String[] CLICKS_PROJECTION = { CLICKS_COLUMN };
+
+	static final Uri CONTENT_URI = Uri
+			.parse(FlattrSDK.FLATTR_PROVIDER_CONTENT_URI);
+	private static final Uri THINGS_URI = Uri
+			.parse(FlattrSDK.FLATTR_PROVIDER_CONTENT_URI + "thing");
+
+	private final ContentResolver contentResolver;
+	// Shared by the loader threads
+	private volatile boolean batchQuerySupported = true;
+
+	ThingProvider(ContentResolver contentResolver) {
+		this.contentResolver = contentResolver;
+	}
+
+	/**
+	 * Query the Flattr application for several things at once.
+	 * 
+	 * @return The clicks of the things known by the application, by thing Id.
+	 */
+	Map<String, Integer> queryClicks(List<String> thingIds) {
+		Map<String, Integer> clicks = new HashMap<String, Integer>();
+		if (batchQuerySupported) {
+			Cursor c;
+			try {
+				StringBuilder selection = new StringBuilder(ID_COLUMN + " IN (");
+				for (int i = 0; i < thingIds.size(); i++) {
+					selection.append(i == 0 ? "?" : ",?");
+				}
+				selection.append(')');
+				c = contentResolver.query(THINGS_URI, PROJECTION,
+						selection.toString(),
+						thingIds.toArray(new String[thingIds.size()]), null);
+			} catch (Exception e) {
+				// This version of the application cannot look for several
+				// things at once
+				batchQuerySupported = false;
+				return queryClicksOneByOne(thingIds);
+			}
+			if (c != null) {
+				try {
+					while (c.moveToNext()) {
+						clicks.put(c.getString(ID_INDEX),
+								c.getInt(CLICKS_INDEX));
+					}
+				} finally {
+					c.close();
+				}
+			}
+			return clicks;
+		}
+		return queryClicksOneByOne(thingIds);
+	}
+
+	private Map<String, Integer> queryClicksOneByOne(List<String> thingIds) {
+		Map<String, Integer> clicks = new HashMap<String, Integer>();
+		for (String thingId : thingIds) {
+			Cursor c = contentResolver.query(
+					Uri.parse(FlattrSDK.FLATTR_PROVIDER_CONTENT_URI
+							+ "thing/id/" + thingId), CLICKS_PROJECTION, null,
+					null, null);
+			if (c != null) {
+				try {
+					if (c.moveToFirst()) {
+						clicks.put(thingId, c.getInt(0));
+					}
+				} finally {
+					c.close();
+				}
+			}
+		}
+		return clicks;
+	}
+
+	/**
+	 * Be notified when the things of the Flattr application change.
+	 */
+	void registerObserver(ContentObserver observer) {
+		contentResolver.registerContentObserver(CONTENT_URI, true, observer);
+	}
+
+	void unregisterObserver(ContentObserver observer) {
+		contentResolver.unregisterContentObserver(observer);
+	}
+}
@@ -0,0 +1,242 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import java.util.concurrent.Executor;
+
+import android.content.ContentResolver;
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Things for the code which is not a <code>FlattrButton</code>: app widgets,
+ * notifications, custom views... Things are loaded by the same pipeline as
+ * the buttons: a thing is fetched once, and cached, however many buttons and
+ * listeners observe it.
+ * <p>
+ * Get the repository with {@link FlattrSDK#getThingRepository(Context)}.
+ * Its methods can be called from any thread.
+ * 
+ * @author Philippe Bernard
+ */
+public final class ThingRepository {
+
+	/**
+	 * Receive the states of an observed thing.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called with the latest known state of the thing when it is
+		 * observed, then each time the thing changes.
+		 */
+		void onThingChanged(ThingState state);
+
+		/**
+		 * Called when the thing could not be loaded. Observing it does not
+		 * stop: it is loaded again by {@link ThingRepository#refresh(String)}.
+		 */
+		void onThingLoadFailed(String thingId, Exception error);
+	}
+
+	private static final Handler handler = new Handler(Looper.getMainLooper());
+
+	private static final Executor UI_THREAD_EXECUTOR = new Executor() {
+		public void execute(Runnable command) {
+			handler.post(command);
+		}
+	};
+
+	private final ContentResolver contentResolver;
+	private final Subscriptions<Observer> observers = new Subscriptions<Observer>();
+
+	ThingRepository(ContentResolver contentResolver) {
+		this.contentResolver = contentResolver;
+	}
+
+	/**
+	 * @return The latest known state of the thing, possibly not fresh, or
+	 *         <code>null</code> if it was never loaded. Nothing is loaded.
+	 */
+	public ThingState get(String thingId) {
+		return FlattrSDK.getThingCache().getLatest(thingId);
+	}
+
+	/**
+	 * Observe a thing, the listener being called on the UI thread.
+	 * 
+	 * @see #observe(String, Listener, Executor)
+	 */
+	public void observe(String thingId, Listener listener) {
+		observe(thingId, listener, UI_THREAD_EXECUTOR);
+	}
+
+	/**
+	 * Observe a thing until {@link #unobserve(String, Listener)} is called.
+	 * The listener gets the latest known state right away, if any, and the
+	 * thing is loaded if that state is not fresh. The listener then gets the
+	 * changes made by the Flattr application and the states loaded for the
+	 * buttons, but the thing is not refreshed periodically: nothing tells the
+	 * repository whether somebody can see it. Call {@link #refresh(String)}
+	 * when the listener needs a fresh state, for example when an app widget
+	 * is updated.
+	 * 
+	 * @param executor
+	 *            Executor the listener is called on.
+	 */
+	public void observe(String thingId, Listener listener, Executor executor) {
+		Observer observer = new Observer(thingId, listener, executor);
+		if (!observers.add(thingId, observer)) {
+			// Already observed
+			return;
+		}
+		ThingLoader.watch(contentResolver, thingId, observer);
+
+		ThingCache cache = FlattrSDK.getThingCache();
+		ThingState state = cache.getLatest(thingId);
+		if (state != null) {
+			observer.onThingLoaded(state);
+		}
+		if ((state == null) || !cache.isFresh(state)) {
+			ThingLoader.load(contentResolver, null, thingId,
+					LoaderExecutor.PRIORITY_ATTACHED, observer);
+		}
+	}
+
+	/**
+	 * Load an observed thing again if its state is not fresh. The listeners
+	 * get the new state, or the error.
+	 */
+	public void refresh(String thingId) {
+		ThingCache cache = FlattrSDK.getThingCache();
+		ThingState state = cache.getLatest(thingId);
+		if ((state != null) && cache.isFresh(state)) {
+			return;
+		}
+		for (Observer observer : observers.get(thingId)) {
+			ThingLoader.load(contentResolver, null, thingId,
+					LoaderExecutor.PRIORITY_ATTACHED, observer);
+		}
+	}
+
+	/**
+	 * Stop observing a thing. A state being delivered may still reach the
+	 * listener if the executor is not the calling thread.
+	 */
+	public void unobserve(String thingId, Listener listener) {
+		Observer observer = null;
+		for (Observer candidate : observers.get(thingId)) {
+			if (candidate.listener == listener) {
+				observer = candidate;
+				break;
+			}
+		}
+		if ((observer == null) || !observer.deactivate()) {
+			return;
+		}
+		observers.remove(thingId, observer);
+		ThingLoader.cancel(thingId, observer);
+		ThingLoader.unwatch(thingId, observer);
+	}
+
+	/**
+	 * @return The number of listeners and buttons observing the thing.
+	 */
+	public int getSubscriberCount(String thingId) {
+		return ThingLoader.getWatcherCount(thingId);
+	}
+
+	/**
+	 * Be notified of every new state of a thing, with the other subscribers.
+	 * Used by the buttons, which load the thing themselves.
+	 */
+	void watch(String thingId, ThingLoader.Callback callback) {
+		ThingLoader.watch(contentResolver, thingId, callback);
+	}
+
+	void unwatch(String thingId, ThingLoader.Callback callback) {
+		ThingLoader.unwatch(thingId, callback);
+	}
+
+	/**
+	 * A listener bound to a thing. Notified on the UI thread, it hands the
+	 * states over to the executor of the listener.
+	 */
+	private static class Observer implements ThingLoader.Callback {
+
+		private final String thingId;
+		private final Listener listener;
+		private final Executor executor;
+		private volatile boolean active = true;
+
+		Observer(String thingId, Listener listener, Executor executor) {
+			this.thingId = thingId;
+			this.listener = listener;
+			this.executor = executor;
+		}
+
+		public void onThingLoaded(final ThingState state) {
+			executor.execute(new Runnable() {
+				public void run() {
+					if (active) {
+						listener.onThingChanged(state);
+					}
+				}
+			});
+		}
+
+		public void onLastKnownState(ThingState state) {
+			// Listeners get the latest known state, fresh or not
+			onThingLoaded(state);
+		}
+
+		public void onThingLoadFailed(final String failedThingId,
+				final Exception error) {
+			executor.execute(new Runnable() {
+				public void run() {
+					if (active) {
+						listener.onThingLoadFailed(failedThingId, error);
+					}
+				}
+			});
+		}
+
+		/**
+		 * @return <code>false</code> if the observer was already deactivated.
+		 */
+		synchronized boolean deactivate() {
+			if (!active) {
+				return false;
+			}
+			active = false;
+			return true;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Observer)) {
+				return false;
+			}
+			Observer other = (Observer) o;
+			return (listener == other.listener)
+					&& thingId.equals(other.thingId);
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(listener) * 31 + thingId.hashCode();
+		}
+	}
+}
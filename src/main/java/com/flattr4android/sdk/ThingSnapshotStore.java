@@ -0,0 +1,329 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Persistent snapshot of the last known state of things, so buttons can be
+ * rendered right away after the process starts.
+ * <p>
+ * The snapshot is an append-only file: each update adds a record, protected
+ * by a checksum. When the file grows too large, it is rewritten with the
+ * latest state of the most recently updated things only. A truncated or
+ * corrupted file is never fatal: the readable records are kept and the file
+ * is rewritten.
+ * <p>
+ * Lookups never touch the disk: the file is read once in the background,
+ * and the states of a load batch are appended with a single write.
+ * 
+ * @author Philippe Bernard
+ */
+class ThingSnapshotStore {
+
+	public static final int DEFAULT_MAX_SIZE = 2000;
+
+	private static final int MAGIC = 0x46534e50; // "FSNP"
+	private static final int VERSION = 1;
+
+	private final File file;
+	private final int maxSize;
+	// Guards the file and the record count. Taken before the monitor, which
+	// only guards the entries: lookups never wait for the disk
+	private final Object fileLock = new Object();
+	// Insertion order: the most recently updated things come last
+	private final LinkedHashMap<String, ThingState> entries = new LinkedHashMap<String, ThingState>();
+	private boolean loaded = false;
+	// States put before the file is loaded, appended once it is
+	private List<ThingState> pendingStates = new ArrayList<ThingState>();
+	private int recordCount = 0;
+
+	ThingSnapshotStore(File file, int maxSize) {
+		this.file = file;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @return The last known state of the thing, <code>null</code> if it is
+	 *         unknown or if the file is not loaded yet.
+	 * @see #load()
+	 */
+	synchronized ThingState get(String thingId) {
+		return entries.get(thingId);
+	}
+
+	void put(ThingState state) {
+		putAll(Collections.singletonList(state));
+	}
+
+	/**
+	 * Record the states of several things, with a single write.
+	 */
+	void putAll(Collection<ThingState> states) {
+		synchronized (this) {
+			if (!loaded) {
+				for (ThingState state : states) {
+					addEntry(state);
+				}
+				pendingStates.addAll(states);
+				return;
+			}
+		}
+		synchronized (fileLock) {
+			Collection<ThingState> compacted = null;
+			synchronized (this) {
+				for (ThingState state : states) {
+					addEntry(state);
+				}
+				if (recordCount + states.size() >= 2 * maxSize) {
+					compacted = new ArrayList<ThingState>(entries.values());
+				}
+			}
+			if (compacted != null) {
+				write(compacted);
+			} else {
+				append(states);
+			}
+		}
+	}
+
+	void clear() {
+		synchronized (fileLock) {
+			synchronized (this) {
+				entries.clear();
+				if (pendingStates != null) {
+					pendingStates.clear();
+				}
+			}
+			recordCount = 0;
+			file.delete();
+		}
+	}
+
+	private void addEntry(ThingState state) {
+		entries.remove(state.getThingId());
+		entries.put(state.getThingId(), state);
+		if (entries.size() > maxSize) {
+			Iterator<String> eldest = entries.keySet().iterator();
+			eldest.next();
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * Read the file, if not done yet. To be called in the background: until
+	 * then, the store only knows the states put since the process started.
+	 */
+	void load() {
+		synchronized (fileLock) {
+			synchronized (this) {
+				if (loaded) {
+					return;
+				}
+			}
+			List<ThingState> readStates = new ArrayList<ThingState>();
+			boolean corrupted = false;
+			try {
+				corrupted = !read(readStates);
+			} catch (FileNotFoundException e) {
+				// No snapshot yet
+			} catch (IOException e) {
+				corrupted = true;
+			}
+			recordCount = readStates.size();
+
+			List<ThingState> newStates;
+			Collection<ThingState> compacted = null;
+			synchronized (this) {
+				for (ThingState state : readStates) {
+					addEntry(state);
+				}
+				// The states put in the meantime are more recent
+				for (ThingState state : pendingStates) {
+					addEntry(state);
+				}
+				newStates = pendingStates;
+				pendingStates = null;
+				loaded = true;
+				if (corrupted
+						|| (recordCount + newStates.size() >= 2 * maxSize)) {
+					compacted = new ArrayList<ThingState>(entries.values());
+				}
+			}
+			if (compacted != null) {
+				write(compacted);
+			} else if (!newStates.isEmpty()) {
+				append(newStates);
+			}
+		}
+	}
+
+	/**
+	 * Read the records of the file, in order.
+	 * 
+	 * @return <code>false</code> if the file is truncated or corrupted. The
+	 *         records read before the broken one are kept.
+	 */
+	private boolean read(List<ThingState> states) throws IOException {
+		byte[] content = readFile();
+		try {
+			ByteArrayInputStream bytes = new ByteArrayInputStream(content);
+			CRC32 crc = new CRC32();
+			DataInputStream in = new DataInputStream(new CheckedInputStream(
+					bytes, crc));
+			if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) {
+				throw new IOException("Unexpected snapshot header");
+			}
+			ThingStatus[] statuses = ThingStatus.values();
+			while (bytes.available() > 0) {
+				crc.reset();
+				String thingId = in.readUTF();
+				int clicks = in.readInt();
+				int status = in.readByte();
+				boolean gotAsUser = in.readBoolean();
+				long loadedAt = in.readLong();
+				int expectedCrc = (int) crc.getValue();
+				if ((in.readInt() != expectedCrc) || (status < 0)
+						|| (status >= statuses.length)) {
+					throw new IOException("Corrupted snapshot record");
+				}
+				states.add(new ThingState(thingId, clicks, statuses[status],
+						gotAsUser, loadedAt));
+			}
+			return true;
+		} catch (IOException e) {
+			// Truncated or corrupted file: keep what could be read, rewrite
+			// the rest
+			return false;
+		}
+	}
+
+	private byte[] readFile() throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			ByteArrayOutputStream content = new ByteArrayOutputStream(
+					(int) file.length());
+			byte[] buffer = new byte[4096];
+			int count;
+			while ((count = in.read(buffer)) > 0) {
+				content.write(buffer, 0, count);
+			}
+			return content.toByteArray();
+		} finally {
+			close(in);
+		}
+	}
+
+	private void append(Collection<ThingState> states) {
+		boolean newFile = !file.exists();
+		OutputStream out = null;
+		try {
+			out = new BufferedOutputStream(new FileOutputStream(file, true));
+			if (newFile) {
+				out.write(header());
+			}
+			for (ThingState state : states) {
+				out.write(record(state));
+			}
+			out.close();
+			out = null;
+			recordCount += states.size();
+		} catch (IOException e) {
+			// The snapshot is only a hint, losing records is not a problem
+		} finally {
+			close(out);
+		}
+	}
+
+	/**
+	 * Rewrite the snapshot file with the given states only.
+	 */
+	private void write(Collection<ThingState> states) {
+		File tmpFile = new File(file.getPath() + ".tmp");
+		OutputStream out = null;
+		try {
+			out = new BufferedOutputStream(new FileOutputStream(tmpFile));
+			out.write(header());
+			for (ThingState state : states) {
+				out.write(record(state));
+			}
+			out.close();
+			out = null;
+			if (!tmpFile.renameTo(file)) {
+				throw new IOException("Cannot rename " + tmpFile);
+			}
+			recordCount = states.size();
+		} catch (IOException e) {
+			// Start over with an empty snapshot rather than a broken one
+			file.delete();
+			recordCount = 0;
+		} finally {
+			close(out);
+			tmpFile.delete();
+		}
+	}
+
+	private static byte[] header() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(8);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		return bytes.toByteArray();
+	}
+
+	private static byte[] record(ThingState state) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeUTF(state.getThingId());
+		out.writeInt(state.getClicks());
+		out.writeByte(state.getStatus().ordinal());
+		out.writeBoolean(state.isGotAsUser());
+		out.writeLong(state.getLoadedAt());
+		CRC32 crc = new CRC32();
+		crc.update(bytes.toByteArray());
+		out.writeInt((int) crc.getValue());
+		return bytes.toByteArray();
+	}
+
+	private static void close(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				// Nothing to do
+			}
+		}
+	}
+}
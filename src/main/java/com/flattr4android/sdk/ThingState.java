@@ -0,0 +1,73 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+/**
+ * Immutable snapshot of what the SDK knows about a thing: its clicks and its
+ * status, as loaded at a given time.
+ * 
+ * @see ThingRepository
+ * 
+ * @author Philippe Bernard
+ */
+public class ThingState {
+
+	private final String thingId;
+	private final int clicks;
+	private final ThingStatus status;
+	private final boolean gotAsUser;
+	private final long loadedAt;
+
+	ThingState(String thingId, int clicks, ThingStatus status,
+			boolean gotAsUser, long loadedAt) {
+		this.thingId = thingId;
+		this.clicks = clicks;
+		this.status = status;
+		this.gotAsUser = gotAsUser;
+		this.loadedAt = loadedAt;
+	}
+
+	ThingState(String thingId, int clicks, ThingStatus status,
+			boolean gotAsUser) {
+		this(thingId, clicks, status, gotAsUser, System.currentTimeMillis());
+	}
+
+	public String getThingId() {
+		return thingId;
+	}
+
+	public int getClicks() {
+		return clicks;
+	}
+
+	public ThingStatus getStatus() {
+		return status;
+	}
+
+	/**
+	 * Tell if the thing was obtained with the user credentials (ie. through
+	 * the Flattr application), in which case its status is meaningful.
+	 */
+	public boolean isGotAsUser() {
+		return gotAsUser;
+	}
+
+	/**
+	 * Time the state was loaded, in milliseconds since the epoch.
+	 */
+	public long getLoadedAt() {
+		return loadedAt;
+	}
+}
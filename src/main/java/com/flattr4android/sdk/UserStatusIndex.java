@@ -0,0 +1,237 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.shredzone.flattr4j.FlattrService;
+import org.shredzone.flattr4j.exception.FlattrException;
+import org.shredzone.flattr4j.model.Flattr;
+import org.shredzone.flattr4j.model.Thing;
+
+/**
+ * Ids of the things flattred and owned by the current user, fetched in bulk
+ * with the user credentials. The status of any thing is then a lookup, with
+ * no request per thing.
+ * 
+ * The index is published as an immutable snapshot: lookups do not lock. It is
+ * refreshed incrementally, the Rest API listing the most recent flattrs and
+ * things first.
+ * 
+ * @author Philippe Bernard
+ */
+class UserStatusIndex {
+
+	static final int PAGE_SIZE = 30;
+	static final int MAX_PAGES = 100;
+	static final long REFRESH_INTERVAL = 10 * 60 * 1000;
+	static final long INITIAL_RETRY_DELAY = 30 * 1000;
+
+	private static class Snapshot {
+		final String userId;
+		final Set<String> flattredIds;
+		final Set<String> ownedIds;
+		final long refreshedAt;
+
+		Snapshot(String userId, Set<String> flattredIds, Set<String> ownedIds,
+				long refreshedAt) {
+			this.userId = userId;
+			this.flattredIds = flattredIds;
+			this.ownedIds = ownedIds;
+			this.refreshedAt = refreshedAt;
+		}
+	}
+
+	// null until the index is loaded
+	private volatile Snapshot snapshot;
+	private FlattrService flattrService;
+	private boolean refreshing = false;
+	// Every lookup may ask for a refresh: back off after a failure
+	private final FailurePolicy refreshPolicy = new FailurePolicy(1,
+			INITIAL_RETRY_DELAY, REFRESH_INTERVAL);
+
+	/**
+	 * Set the REST client acting on behalf of the user, or <code>null</code>
+	 * if there is no user anymore. The index of the previous user is dropped.
+	 */
+	synchronized void setFlattrService(FlattrService service) {
+		if (service != flattrService) {
+			flattrService = service;
+			snapshot = null;
+			refreshPolicy.onSuccess();
+		}
+	}
+
+	boolean isLoaded() {
+		return snapshot != null;
+	}
+
+	/**
+	 * @return The status of the thing for the current user, or
+	 *         <code>null</code> if the index is not loaded.
+	 */
+	ThingStatus getStatus(String thingId) {
+		Snapshot current = snapshot;
+		if (current == null) {
+			return null;
+		}
+		if (current.ownedIds.contains(thingId)) {
+			return ThingStatus.OWNER;
+		}
+		if (current.flattredIds.contains(thingId)) {
+			return ThingStatus.FLATTRED;
+		}
+		return ThingStatus.DEFAULT;
+	}
+
+	/**
+	 * @return The id of the current user, <code>null</code> if the index is
+	 *         not loaded.
+	 */
+	String getUserId() {
+		Snapshot current = snapshot;
+		return (current != null) ? current.userId : null;
+	}
+
+	synchronized boolean needsRefresh(long now) {
+		if ((flattrService == null) || refreshing) {
+			return false;
+		}
+		if ((snapshot != null)
+				&& (now - snapshot.refreshedAt <= REFRESH_INTERVAL)) {
+			return false;
+		}
+		return refreshPolicy.allowRequest(now);
+	}
+
+	/**
+	 * Record a flattr made by the user, without waiting for the next refresh.
+	 */
+	synchronized void addFlattred(String thingId) {
+		Snapshot current = snapshot;
+		if ((current == null) || current.flattredIds.contains(thingId)) {
+			return;
+		}
+		Set<String> flattredIds = new HashSet<String>(current.flattredIds);
+		flattredIds.add(thingId);
+		snapshot = new Snapshot(current.userId, flattredIds, current.ownedIds,
+				current.refreshedAt);
+	}
+
+	/**
+	 * Fetch the things flattred and owned since the last refresh, or all of
+	 * them the first time. To be called in the background.
+	 * 
+	 * @return The things whose status changed, empty if the index was not
+	 *         refreshed (no user, or already being refreshed).
+	 */
+	Set<String> refresh() throws FlattrException {
+		FlattrService service;
+		Snapshot previous;
+		synchronized (this) {
+			if ((flattrService == null) || refreshing) {
+				return Collections.emptySet();
+			}
+			refreshing = true;
+			service = flattrService;
+			previous = snapshot;
+		}
+		boolean succeeded = false;
+		try {
+			Snapshot next = fetch(service, previous);
+			succeeded = true;
+			synchronized (this) {
+				if (service != flattrService) {
+					// The user changed in the meantime
+					return Collections.emptySet();
+				}
+				// Flattrs recorded while refreshing
+				if ((snapshot != null) && (snapshot != previous)) {
+					next.flattredIds.addAll(snapshot.flattredIds);
+				}
+				snapshot = next;
+			}
+			Set<String> changed = new HashSet<String>();
+			for (String thingId : next.ownedIds) {
+				if ((previous == null) || !previous.ownedIds.contains(thingId)) {
+					changed.add(thingId);
+				}
+			}
+			for (String thingId : next.flattredIds) {
+				if ((previous == null)
+						|| !previous.flattredIds.contains(thingId)) {
+					changed.add(thingId);
+				}
+			}
+			return changed;
+		} finally {
+			synchronized (this) {
+				refreshing = false;
+				if (service == flattrService) {
+					if (succeeded) {
+						refreshPolicy.onSuccess();
+					} else {
+						refreshPolicy.onFailure(System.currentTimeMillis());
+					}
+				}
+			}
+		}
+	}
+
+	private static Snapshot fetch(FlattrService service, Snapshot previous)
+			throws FlattrException {
+		String userId = (previous != null) ? previous.userId : service
+				.getMyself().getUserId();
+		// Known from the previous refresh, if any: listing them again means
+		// the rest is known too
+		Set<String> knownOwnedIds = (previous != null) ? previous.ownedIds
+				: Collections.<String> emptySet();
+		Set<String> knownFlattredIds = (previous != null) ? previous.flattredIds
+				: Collections.<String> emptySet();
+		Set<String> ownedIds = new HashSet<String>(knownOwnedIds);
+		Set<String> flattredIds = new HashSet<String>(knownFlattredIds);
+		long refreshedAt = System.currentTimeMillis();
+
+		for (int page = 1; page <= MAX_PAGES; page++) {
+			List<Thing> things = service.getMyThings(PAGE_SIZE, page);
+			boolean known = false;
+			for (Thing thing : things) {
+				known |= knownOwnedIds.contains(thing.getThingId());
+				ownedIds.add(thing.getThingId());
+			}
+			if (known || (things.size() < PAGE_SIZE)) {
+				// Reached the things fetched last time, or the end
+				break;
+			}
+		}
+		for (int page = 1; page <= MAX_PAGES; page++) {
+			List<Flattr> flattrs = service.getMyFlattrs(PAGE_SIZE, page);
+			boolean known = false;
+			for (Flattr flattr : flattrs) {
+				// A thing may be flattred again another month: only the
+				// previous refresh tells where to stop
+				known |= knownFlattredIds.contains(flattr.getThingId());
+				flattredIds.add(flattr.getThingId());
+			}
+			if (known || (flattrs.size() < PAGE_SIZE)) {
+				break;
+			}
+		}
+		return new Snapshot(userId, flattredIds, ownedIds, refreshedAt);
+	}
+}
@@ -0,0 +1,99 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Checks the snapshots displayed by the buttons.
+ * 
+ * @author Philippe Bernard
+ */
+public class ButtonStateTest {
+
+	private static final long NOW = 1000000;
+
+	private final ButtonState bound = ButtonState.UNBOUND.bind("t1");
+
+	@Test
+	public void recognizesDisplayedThing() {
+		ButtonState state = bound.withThing(thing(5, ThingStatus.DEFAULT,
+				true), false, true);
+		assertTrue(state.showsSameThing(thing(5, ThingStatus.DEFAULT, true)));
+		assertFalse(state
+				.showsSameThing(thing(6, ThingStatus.DEFAULT, true)));
+		assertFalse(state.showsSameThing(thing(5, ThingStatus.FLATTRED,
+				true)));
+		assertFalse(state.showsSameThing(thing(5, ThingStatus.DEFAULT,
+				false)));
+	}
+
+	@Test
+	public void redrawsThingNotDisplayedYet() {
+		assertFalse(bound.showsSameThing(thing(5, ThingStatus.DEFAULT, true)));
+		// During the first half of the animation
+		ButtonState state = bound.withThing(thing(5, ThingStatus.DEFAULT,
+				true), false, false);
+		assertFalse(state.showsSameThing(thing(5, ThingStatus.DEFAULT, true)));
+		assertTrue(state.displayed().showsSameThing(
+				thing(5, ThingStatus.DEFAULT, true)));
+	}
+
+	@Test
+	public void formatsClicksOnlyWhenTheyChange() {
+		ButtonState state = bound.withThing(thing(5, ThingStatus.DEFAULT,
+				true), false, true);
+		assertEquals("5", state.getClicksText());
+		ButtonState refreshed = state.withThing(thing(5, ThingStatus.FLATTRED,
+				true), false, true);
+		assertSame(state.getClicksText(), refreshed.getClicksText());
+		assertEquals("6", refreshed.withThing(
+				thing(6, ThingStatus.FLATTRED, true), false, true)
+				.getClicksText());
+	}
+
+	@Test
+	public void displayedOnce() {
+		ButtonState state = bound.withThing(thing(5, ThingStatus.DEFAULT,
+				true), false, false);
+		ButtonState displayed = state.displayed();
+		assertTrue(displayed.isDisplayed());
+		assertSame(displayed, displayed.displayed());
+	}
+
+	@Test
+	public void startsGenerationOnBind() {
+		ButtonState state = bound.withThing(thing(5, ThingStatus.DEFAULT,
+				true), false, true);
+		ButtonState rebound = state.bind("t1");
+		assertEquals(state.getGeneration() + 1, rebound.getGeneration());
+		// Nothing is kept from the previous binding, even of the same thing
+		assertFalse(rebound.isSet());
+		assertFalse(rebound.isDisplayed());
+		assertEquals(rebound.getGeneration(), rebound.withThing(
+				thing(6, ThingStatus.DEFAULT, true), false, true)
+				.getGeneration());
+	}
+
+	private static ThingState thing(int clicks, ThingStatus status,
+			boolean gotAsUser) {
+		return new ThingState("t1", clicks, status, gotAsUser, NOW);
+	}
+}
@@ -0,0 +1,333 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks the compact store against a <code>HashMap</code>, in particular the
+ * backward shift deletion and the clock eviction.
+ * 
+ * @author Philippe Bernard
+ */
+public class CompactThingStoreTest {
+
+	private static final long NOW = System.currentTimeMillis();
+
+	@Test
+	public void acceptsHexadecimalIdsOnly() {
+		assertTrue(CompactThingStore.accepts(id(1)));
+		assertFalse(CompactThingStore.accepts(null));
+		assertFalse(CompactThingStore.accepts("12345"));
+		assertFalse(CompactThingStore.accepts(id(1).toUpperCase()));
+
+		CompactThingStore store = new CompactThingStore(10);
+		assertFalse(store.put(state("not-a-hexadecimal-id", 1)));
+		assertEquals(0, store.size());
+	}
+
+	@Test
+	public void keepsStates() {
+		CompactThingStore store = new CompactThingStore(10);
+		long loadedAt = NOW + 12345;
+		assertTrue(store.put(new ThingState(id(1), 42, ThingStatus.FLATTRED,
+				true, loadedAt)));
+
+		ThingState state = store.get(id(1));
+		assertNotNull(state);
+		assertEquals(id(1), state.getThingId());
+		assertEquals(42, state.getClicks());
+		assertEquals(ThingStatus.FLATTRED, state.getStatus());
+		assertTrue(state.isGotAsUser());
+		// Rounded to the second
+		assertTrue(Math.abs(state.getLoadedAt() - loadedAt) < 1000);
+		assertNull(store.get(id(2)));
+	}
+
+	@Test
+	public void matchesHashMap() {
+		// Large enough not to evict: any difference is a bug of the table
+		int thingCount = 300;
+		CompactThingStore store = new CompactThingStore(thingCount);
+		Map<String, Integer> expected = new HashMap<String, Integer>();
+		Random random = new Random(1);
+		for (int i = 0; i < 100000; i++) {
+			String thingId = id(random.nextInt(thingCount));
+			if (random.nextInt(3) == 0) {
+				store.remove(thingId);
+				expected.remove(thingId);
+			} else {
+				int clicks = random.nextInt(1000);
+				store.put(state(thingId, clicks));
+				expected.put(thingId, clicks);
+			}
+			if (i % 1000 == 0) {
+				assertSameContent(expected, store, thingCount);
+			}
+		}
+		assertSameContent(expected, store, thingCount);
+	}
+
+	@Test
+	public void removesAcrossTableEnd() {
+		// In a small table, many probe sequences wrap around its end. A new
+		// set of things for each round, so their slots vary
+		int thingCount = 12;
+		CompactThingStore store = new CompactThingStore(thingCount);
+		Random random = new Random(3);
+		for (int round = 0; round < 200; round++) {
+			int first = round * thingCount;
+			Map<String, Integer> expected = new HashMap<String, Integer>();
+			for (int i = 0; i < 500; i++) {
+				String thingId = id(first + random.nextInt(thingCount));
+				if (random.nextBoolean()) {
+					store.remove(thingId);
+					expected.remove(thingId);
+				} else {
+					store.put(state(thingId, i));
+					expected.put(thingId, i);
+				}
+				assertSameContent(expected, store, first, thingCount);
+			}
+			for (int i = 0; i < thingCount; i++) {
+				store.remove(id(first + i));
+			}
+			assertEquals(0, store.size());
+		}
+	}
+
+	@Test
+	public void removesFromFullProbeSequences() {
+		// Fill the table, then remove in another order: each removal shifts
+		// back the entries of the probe sequence
+		int thingCount = 1000;
+		CompactThingStore store = new CompactThingStore(thingCount);
+		Map<String, Integer> expected = new HashMap<String, Integer>();
+		for (int i = 0; i < thingCount; i++) {
+			store.put(state(id(i), i));
+			expected.put(id(i), i);
+		}
+		for (int i = 0; i < thingCount; i += 7) {
+			store.remove(id(i));
+			expected.remove(id(i));
+			assertSameContent(expected, store, thingCount);
+		}
+	}
+
+	@Test
+	public void evictsEntriesNotLookedUp() {
+		int maxSize = 100;
+		CompactThingStore store = new CompactThingStore(maxSize);
+		for (int i = 0; i < maxSize; i++) {
+			store.put(state(id(i), i));
+		}
+		// Reference the even things
+		for (int i = 0; i < maxSize; i += 2) {
+			assertNotNull(store.get(id(i)));
+		}
+
+		store.put(state(id(maxSize), maxSize));
+		assertEquals(maxSize, store.size());
+		assertNotNull(store.get(id(maxSize)));
+		int evicted = 0;
+		for (int i = 0; i < maxSize; i++) {
+			if (store.get(id(i)) == null) {
+				assertTrue("Referenced thing " + i + " evicted", i % 2 != 0);
+				evicted++;
+			}
+		}
+		assertEquals(1, evicted);
+	}
+
+	@Test
+	public void staysConsistentWhenEvicting() {
+		int maxSize = 50;
+		CompactThingStore store = new CompactThingStore(maxSize);
+		Map<String, Integer> latest = new HashMap<String, Integer>();
+		Random random = new Random(2);
+		for (int i = 0; i < 20000; i++) {
+			String thingId = id(random.nextInt(200));
+			switch (random.nextInt(4)) {
+			case 0:
+				store.remove(thingId);
+				latest.remove(thingId);
+				break;
+			case 1:
+				ThingState state = store.get(thingId);
+				if (state != null) {
+					// Evicted things are missing, never wrong
+					assertEquals(latest.get(thingId).intValue(),
+							state.getClicks());
+				}
+				break;
+			default:
+				int clicks = random.nextInt(1000);
+				store.put(state(thingId, clicks));
+				latest.put(thingId, clicks);
+				assertNotNull(store.get(thingId));
+			}
+			assertTrue(store.size() <= maxSize);
+		}
+	}
+
+	@Test
+	public void clears() {
+		CompactThingStore store = new CompactThingStore(100);
+		for (int i = 0; i < 100; i++) {
+			store.put(state(id(i), i));
+		}
+		store.clear();
+		assertEquals(0, store.size());
+		assertNull(store.get(id(1)));
+		store.put(state(id(1), 1));
+		assertEquals(1, store.get(id(1)).getClicks());
+	}
+
+	@Test
+	public void keepsThingsCompact() throws IllegalAccessException {
+		int thingCount = 100000;
+		CompactThingStore store = new CompactThingStore(thingCount);
+		ThingStatus[] statuses = ThingStatus.values();
+		for (int i = 0; i < thingCount; i++) {
+			store.put(id(i), i, statuses[i % statuses.length], i % 2 == 0,
+					NOW);
+		}
+		assertEquals(thingCount, store.size());
+		double bytesPerThing = (double) retainedSize(store) / thingCount;
+		assertTrue(bytesPerThing + " bytes per thing", bytesPerThing < 35);
+	}
+
+	/**
+	 * Heap retained by an object graph, with the layout of a 64-bit JVM using
+	 * compressed references: 12 bytes of object header, 16 bytes of array
+	 * header, 4 bytes per reference, objects aligned on 8 bytes. Static
+	 * fields are not counted, nor the objects of the JDK referenced by the
+	 * graph.
+	 */
+	private static long retainedSize(Object root) throws IllegalAccessException {
+		Map<Object, Object> seen = new IdentityHashMap<Object, Object>();
+		List<Object> stack = new ArrayList<Object>();
+		stack.add(root);
+		long size = 0;
+		while (!stack.isEmpty()) {
+			Object object = stack.remove(stack.size() - 1);
+			if (seen.put(object, object) != null) {
+				continue;
+			}
+			Class<?> type = object.getClass();
+			long objectSize;
+			if (type.isArray()) {
+				int length = Array.getLength(object);
+				objectSize = 16 + (long) length
+						* fieldSize(type.getComponentType());
+				if (!type.getComponentType().isPrimitive()) {
+					for (int i = 0; i < length; i++) {
+						push(stack, Array.get(object, i));
+					}
+				}
+			} else {
+				objectSize = 12;
+				for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+					for (Field field : c.getDeclaredFields()) {
+						if (Modifier.isStatic(field.getModifiers())) {
+							continue;
+						}
+						objectSize += fieldSize(field.getType());
+						if (!field.getType().isPrimitive()
+								&& !c.getName().startsWith("java.")) {
+							field.setAccessible(true);
+							push(stack, field.get(object));
+						}
+					}
+				}
+			}
+			size += (objectSize + 7) / 8 * 8;
+		}
+		return size;
+	}
+
+	private static void push(List<Object> stack, Object object) {
+		if ((object != null) && !(object instanceof Enum)
+				&& !object.getClass().getName().startsWith("java.")) {
+			stack.add(object);
+		}
+	}
+
+	private static int fieldSize(Class<?> type) {
+		if ((type == long.class) || (type == double.class)) {
+			return 8;
+		}
+		if ((type == int.class) || (type == float.class)) {
+			return 4;
+		}
+		if ((type == short.class) || (type == char.class)) {
+			return 2;
+		}
+		if ((type == byte.class) || (type == boolean.class)) {
+			return 1;
+		}
+		// Compressed reference
+		return 4;
+	}
+
+	private static void assertSameContent(Map<String, Integer> expected,
+			CompactThingStore store, int thingCount) {
+		assertSameContent(expected, store, 0, thingCount);
+	}
+
+	private static void assertSameContent(Map<String, Integer> expected,
+			CompactThingStore store, int first, int thingCount) {
+		assertEquals(expected.size(), store.size());
+		List<String> missing = new ArrayList<String>();
+		for (int i = first; i < first + thingCount; i++) {
+			String thingId = id(i);
+			ThingState state = store.get(thingId);
+			Integer clicks = expected.get(thingId);
+			if (clicks == null) {
+				assertNull(thingId, state);
+			} else if (state == null) {
+				missing.add(thingId);
+			} else {
+				assertEquals(clicks.intValue(), state.getClicks());
+			}
+		}
+		assertTrue("Missing " + missing, missing.isEmpty());
+	}
+
+	private static ThingState state(String thingId, int clicks) {
+		return new ThingState(thingId, clicks, ThingStatus.DEFAULT, false, NOW);
+	}
+
+	private static String id(int i) {
+		// Similar ids, as generated by the Rest API
+		return String.format("%032x", 0xabcdef00L + i);
+	}
+}
@@ -0,0 +1,118 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks the transitions of the circuit breaker, and its backoff delays.
+ * 
+ * @author Philippe Bernard
+ */
+public class FailurePolicyTest {
+
+	private static final long INITIAL_DELAY = 1000;
+	private static final long MAX_DELAY = 10000;
+
+	private final FailurePolicy policy = new FailurePolicy(3, INITIAL_DELAY,
+			MAX_DELAY);
+
+	@Test
+	public void staysClosedBelowThreshold() {
+		policy.onFailure(0);
+		policy.onFailure(0);
+		assertTrue(policy.allowRequest(0));
+		assertEquals(0, policy.getRemainingOpenTime(0));
+
+		// The failures must be consecutive
+		policy.onSuccess();
+		policy.onFailure(0);
+		policy.onFailure(0);
+		assertTrue(policy.allowRequest(0));
+	}
+
+	@Test
+	public void opensAtThreshold() {
+		open(0);
+		assertFalse(policy.allowRequest(0));
+		long remaining = policy.getRemainingOpenTime(0);
+		assertTrue(remaining >= INITIAL_DELAY / 2);
+		assertTrue(remaining <= INITIAL_DELAY);
+		assertFalse(policy.allowRequest(remaining - 1));
+	}
+
+	@Test
+	public void probesOnceAfterDelay() {
+		open(0);
+		long end = policy.getRemainingOpenTime(0);
+		// A single probe, the other requests still fail fast
+		assertTrue(policy.allowRequest(end));
+		assertFalse(policy.allowRequest(end));
+		assertEquals(0, policy.getRemainingOpenTime(end));
+	}
+
+	@Test
+	public void closesWhenProbeSucceeds() {
+		open(0);
+		long end = policy.getRemainingOpenTime(0);
+		assertTrue(policy.allowRequest(end));
+		policy.onSuccess();
+		assertTrue(policy.allowRequest(end));
+		assertTrue(policy.allowRequest(end));
+
+		// Counted from scratch again
+		policy.onFailure(end);
+		assertTrue(policy.allowRequest(end));
+	}
+
+	@Test
+	public void reopensLongerWhenProbeFails() {
+		open(0);
+		long end = policy.getRemainingOpenTime(0);
+		assertTrue(policy.allowRequest(end));
+		// A single failure of the probe is enough
+		policy.onFailure(end);
+		assertFalse(policy.allowRequest(end));
+		long remaining = policy.getRemainingOpenTime(end);
+		assertTrue(remaining >= INITIAL_DELAY);
+		assertTrue(remaining <= 2 * INITIAL_DELAY);
+	}
+
+	@Test
+	public void capsBackoffDelay() {
+		Random random = new Random(1);
+		for (int attempt = 0; attempt < 100; attempt++) {
+			long delay = Math.min(MAX_DELAY, INITIAL_DELAY
+					<< Math.min(attempt, 20));
+			long jittered = FailurePolicy.getBackoffDelay(INITIAL_DELAY,
+					MAX_DELAY, attempt, random);
+			assertTrue(jittered >= delay / 2);
+			assertTrue(jittered <= delay);
+		}
+	}
+
+	private void open(long now) {
+		for (int i = 0; i < 3; i++) {
+			assertTrue(policy.allowRequest(now));
+			policy.onFailure(now);
+		}
+	}
+}
@@ -0,0 +1,76 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Checks that concurrent loads of a thing share a single fetch.
+ * 
+ * @author Philippe Bernard
+ */
+public class InFlightRegistryTest {
+
+	private final InFlightRegistry<String> registry = new InFlightRegistry<String>();
+
+	@Test
+	public void firstCallerStartsLoad() {
+		assertTrue(registry.join("t1", "a"));
+		assertFalse(registry.join("t1", "b"));
+		assertFalse(registry.join("t1", "c"));
+		// Another thing has its own load
+		assertTrue(registry.join("t2", "a"));
+		assertTrue(registry.isInFlight("t1"));
+		assertEquals(Arrays.asList("a", "b", "c"), registry.complete("t1"));
+		assertFalse(registry.isInFlight("t1"));
+		assertTrue(registry.isInFlight("t2"));
+	}
+
+	@Test
+	public void joinsOnceAgain() {
+		registry.join("t1", "a");
+		// To raise the priority of its load
+		assertFalse(registry.join("t1", "a"));
+		assertEquals(Collections.singletonList("a"), registry.complete("t1"));
+	}
+
+	@Test
+	public void startsNewLoadOnceCompleted() {
+		registry.join("t1", "a");
+		registry.complete("t1");
+		assertTrue(registry.join("t1", "b"));
+		assertEquals(Collections.singletonList("b"), registry.complete("t1"));
+		assertEquals(0, registry.complete("t1").size());
+	}
+
+	@Test
+	public void endsLoadWithLastCaller() {
+		registry.join("t1", "a");
+		registry.join("t1", "b");
+		assertFalse(registry.leave("t1", "a"));
+		assertTrue(registry.isInFlight("t1"));
+		assertTrue(registry.leave("t1", "b"));
+		assertFalse(registry.isInFlight("t1"));
+		assertFalse(registry.leave("t1", "b"));
+		assertTrue(registry.join("t1", "c"));
+	}
+}
@@ -0,0 +1,142 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Checks when loads are sent and when things known from a previous load are
+ * used, under simulated network conditions.
+ * 
+ * @author Philippe Bernard
+ */
+public class LoadingPolicyTest {
+
+	private static class FakeConnectivitySource implements
+			ConnectivitySource {
+		boolean connected = true;
+		boolean metered;
+		boolean slow;
+
+		public boolean isConnected() {
+			return connected;
+		}
+
+		public boolean isMetered() {
+			return metered;
+		}
+
+		public boolean isSlow() {
+			return slow;
+		}
+	}
+
+	private static final long NOW = 1000000;
+
+	private final FakeConnectivitySource source = new FakeConnectivitySource();
+	private final LoadingPolicy policy = new LoadingPolicy();
+
+	@Test
+	public void assumesFastNetworkWithoutSource() {
+		assertFalse(policy.hasConnectivitySource());
+		assertAllUrgent(NOW);
+		assertEquals(-1, policy.getMaxLocalDataAge());
+		assertTrue(policy.isConnected());
+	}
+
+	@Test
+	public void sendsEverythingOnFreeNetwork() {
+		policy.setConnectivitySource(source);
+		assertTrue(policy.hasConnectivitySource());
+		assertAllUrgent(NOW);
+		assertEquals(-1, policy.getMaxLocalDataAge());
+	}
+
+	@Test
+	public void defersHiddenLoadsOnMeteredNetwork() {
+		source.metered = true;
+		policy.setConnectivitySource(source);
+		assertTrue(policy.isUrgent(LoaderExecutor.PRIORITY_VISIBLE, NOW));
+		assertFalse(policy.isUrgent(LoaderExecutor.PRIORITY_ATTACHED, NOW));
+		assertFalse(policy.isUrgent(LoaderExecutor.PRIORITY_BACKGROUND, NOW));
+	}
+
+	@Test
+	public void burstsWhileRadioIsActive() {
+		source.metered = true;
+		policy.setConnectivitySource(source);
+		policy.onNetworkActivity(NOW);
+		assertAllUrgent(NOW);
+		assertAllUrgent(NOW + LoadingPolicy.RADIO_TAIL - 1);
+
+		// The radio went back to sleep
+		long later = NOW + LoadingPolicy.RADIO_TAIL;
+		assertFalse(policy.isRadioActive(later));
+		assertFalse(policy.isUrgent(LoaderExecutor.PRIORITY_BACKGROUND, later));
+		assertTrue(policy.isUrgent(LoaderExecutor.PRIORITY_VISIBLE, later));
+
+		// Until another request wakes it up
+		policy.onNetworkActivity(later);
+		assertAllUrgent(later);
+	}
+
+	@Test
+	public void followsSourceChanges() {
+		policy.setConnectivitySource(source);
+		assertTrue(policy.isUrgent(LoaderExecutor.PRIORITY_BACKGROUND, NOW));
+		source.metered = true;
+		assertFalse(policy.isUrgent(LoaderExecutor.PRIORITY_BACKGROUND, NOW));
+		source.metered = false;
+		assertTrue(policy.isUrgent(LoaderExecutor.PRIORITY_BACKGROUND, NOW));
+	}
+
+	@Test
+	public void prefersLocalDataOnSlowLink() {
+		source.metered = true;
+		source.slow = true;
+		policy.setConnectivitySource(source);
+		assertEquals(LoadingPolicy.MAX_SLOW_LINK_AGE,
+				policy.getMaxLocalDataAge());
+	}
+
+	@Test
+	public void usesLocalDataOfAnyAgeWhenDisconnected() {
+		source.connected = false;
+		policy.setConnectivitySource(source);
+		assertFalse(policy.isConnected());
+		assertEquals(Long.MAX_VALUE, policy.getMaxLocalDataAge());
+	}
+
+	@Test
+	public void revertsToFastNetwork() {
+		source.connected = false;
+		source.metered = true;
+		policy.setConnectivitySource(source);
+		policy.setConnectivitySource(null);
+		assertFalse(policy.hasConnectivitySource());
+		assertTrue(policy.isConnected());
+		assertAllUrgent(NOW);
+	}
+
+	private void assertAllUrgent(long now) {
+		assertTrue(policy.isUrgent(LoaderExecutor.PRIORITY_VISIBLE, now));
+		assertTrue(policy.isUrgent(LoaderExecutor.PRIORITY_ATTACHED, now));
+		assertTrue(policy.isUrgent(LoaderExecutor.PRIORITY_BACKGROUND, now));
+	}
+}
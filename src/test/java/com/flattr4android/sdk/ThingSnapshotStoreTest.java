@@ -0,0 +1,204 @@
+/* Copyright (c) 2010-2012 Flattr4Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flattr4android.sdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the snapshot survives restarts, and that a truncated or
+ * corrupted file is recovered from.
+ * 
+ * @author Philippe Bernard
+ */
+public class ThingSnapshotStoreTest {
+
+	private static final int HEADER_SIZE = 8;
+	// With a two characters Id, such as "t0"
+	private static final int RECORD_SIZE = 22;
+
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("snapshot", ".dat");
+		file.delete();
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void keepsStatesAcrossRestarts() {
+		ThingSnapshotStore store = open(10);
+		store.put(new ThingState("a", 1, ThingStatus.FLATTRED, true, 1000));
+		store.putAll(states(0, 5));
+
+		ThingSnapshotStore restarted = open(10);
+		ThingState state = restarted.get("a");
+		assertNotNull(state);
+		assertEquals(1, state.getClicks());
+		assertEquals(ThingStatus.FLATTRED, state.getStatus());
+		assertTrue(state.isGotAsUser());
+		assertEquals(1000, state.getLoadedAt());
+		for (int i = 0; i < 5; i++) {
+			assertEquals(i, restarted.get("t" + i).getClicks());
+		}
+	}
+
+	@Test
+	public void keepsStatesPutBeforeLoading() {
+		open(10).putAll(states(0, 3));
+
+		ThingSnapshotStore store = new ThingSnapshotStore(file, 10);
+		assertNull(store.get("t0"));
+		store.put(new ThingState("t1", 100, ThingStatus.DEFAULT, false));
+		assertEquals(100, store.get("t1").getClicks());
+		store.load();
+		assertEquals(0, store.get("t0").getClicks());
+		// More recent than the file
+		assertEquals(100, store.get("t1").getClicks());
+
+		assertEquals(100, open(10).get("t1").getClicks());
+	}
+
+	@Test
+	public void recoversFromTruncation() throws IOException {
+		open(10).putAll(states(0, 5));
+		truncate(file.length() - 3);
+
+		ThingSnapshotStore store = open(10);
+		for (int i = 0; i < 4; i++) {
+			assertEquals(i, store.get("t" + i).getClicks());
+		}
+		assertNull(store.get("t4"));
+
+		// Rewritten: the file is whole again
+		store.put(new ThingState("t5", 5, ThingStatus.DEFAULT, false));
+		ThingSnapshotStore restarted = open(10);
+		assertEquals(3, restarted.get("t3").getClicks());
+		assertEquals(5, restarted.get("t5").getClicks());
+	}
+
+	@Test
+	public void recoversFromCorruption() throws IOException {
+		open(10).putAll(states(0, 5));
+		assertEquals(HEADER_SIZE + 5 * RECORD_SIZE, file.length());
+		// Flip a byte of the clicks of the third record
+		corrupt(HEADER_SIZE + 2 * RECORD_SIZE + 5);
+
+		ThingSnapshotStore store = open(10);
+		assertEquals(0, store.get("t0").getClicks());
+		assertEquals(1, store.get("t1").getClicks());
+		// The records after a corrupted one cannot be trusted
+		assertNull(store.get("t2"));
+		assertNull(store.get("t3"));
+		assertEquals(HEADER_SIZE + 2 * RECORD_SIZE, file.length());
+	}
+
+	@Test
+	public void recoversFromUnknownFile() throws IOException {
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try {
+			out.writeBytes("Not a snapshot at all");
+		} finally {
+			out.close();
+		}
+
+		ThingSnapshotStore store = open(10);
+		assertNull(store.get("t0"));
+		store.putAll(states(0, 2));
+		assertEquals(1, open(10).get("t1").getClicks());
+	}
+
+	@Test
+	public void compactsToMostRecentThings() {
+		ThingSnapshotStore store = open(3);
+		for (int i = 0; i < 10; i++) {
+			store.putAll(states(i, i + 1));
+			// Rewritten before holding twice the records kept
+			assertTrue(file.length() < HEADER_SIZE + 6 * RECORD_SIZE);
+		}
+
+		ThingSnapshotStore restarted = open(3);
+		for (int i = 0; i < 7; i++) {
+			assertNull(restarted.get("t" + i));
+		}
+		for (int i = 7; i < 10; i++) {
+			assertEquals(i, restarted.get("t" + i).getClicks());
+		}
+	}
+
+	@Test
+	public void clears() {
+		ThingSnapshotStore store = open(10);
+		store.putAll(states(0, 3));
+		store.clear();
+		assertNull(store.get("t0"));
+		assertFalse(file.exists());
+		assertNull(open(10).get("t0"));
+	}
+
+	private ThingSnapshotStore open(int maxSize) {
+		ThingSnapshotStore store = new ThingSnapshotStore(file, maxSize);
+		store.load();
+		return store;
+	}
+
+	private static List<ThingState> states(int from, int to) {
+		List<ThingState> states = new ArrayList<ThingState>();
+		for (int i = from; i < to; i++) {
+			states.add(new ThingState("t" + i, i, ThingStatus.DEFAULT, false,
+					1000));
+		}
+		return states;
+	}
+
+	private void truncate(long length) throws IOException {
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try {
+			out.setLength(length);
+		} finally {
+			out.close();
+		}
+	}
+
+	private void corrupt(long position) throws IOException {
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try {
+			out.seek(position);
+			int value = out.read();
+			out.seek(position);
+			out.write(value ^ 0xff);
+		} finally {
+			out.close();
+		}
+	}
+}